@@ -0,0 +1,28 @@
+package example;
+
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/// Operations shared by every autocomplete engine (Trie, TST and their variants).
+/// Lets loaders, benchmarks and other tooling work against any engine.
+public interface AutocompleteIndex {
+    /// Inserts a word with its frequency. Inserting an existing word overwrites its frequency.
+    void insert(String word, int frequency);
+
+    /// Removes `word`. Returns false if it was not in the index.
+    boolean delete(String word);
+
+    /// Returns up to `limit` words starting with `prefix`, most frequent first.
+    List<String> getSuggestions(String prefix, int limit);
+
+    /// Returns the frequency stored for `word`, or 0 if the word is not in the index.
+    int getFrequency(String word);
+
+    /// Hands every stored word and its frequency to `action`, in no particular order.
+    void forEachWord(ObjIntConsumer<String> action);
+
+    /// Installs a hook that is told how much work each `getSuggestions` call did (null removes it).
+    /// Engines without per-node work to report ignore it.
+    default void setQueryProbe(QueryProbe probe) {
+    }
+}
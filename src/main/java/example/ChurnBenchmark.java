@@ -0,0 +1,76 @@
+package example;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/// Sustained insert/delete churn on top of the CSV dictionary, like trending terms coming and going.
+/// Every round inserts a batch of new random words and deletes the batch from `window` rounds earlier, so the live
+/// word count stays constant; the reported memory should stay flat too. Random words that are already in the index
+/// (a dictionary word or a live churn word) are drawn again, so the churn never deletes dictionary entries.
+///
+/// Usage: ChurnBenchmark [trie|tst|offheap] [rounds] [batchSize] [window]
+public class ChurnBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String engine = args.length > 0 ? args[0] : "trie";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        int window = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        AutocompleteIndex index = Main.createIndex(engine);
+        Main.loadDictionary("filtered_words.csv", index);
+        Random random = new Random(11);
+        ArrayDeque<List<String>> liveBatches = new ArrayDeque<>();
+
+        System.out.println("Engine: " + engine + ", batch: " + batchSize + ", window: " + window);
+        long startTime = System.nanoTime();
+        for (int round = 1; round <= rounds; round++) {
+            List<String> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                String word;
+                do {
+                    word = randomWord(random);
+                } while (index.getFrequency(word) != 0); // Dictionary counts and churn frequencies are at least 1.
+                batch.add(word);
+                index.insert(word, 1 + random.nextInt(1000));
+            }
+            liveBatches.addLast(batch);
+
+            int deleted = 0;
+            if (liveBatches.size() > window) {
+                for (String word : liveBatches.removeFirst()) {
+                    if (index.delete(word)) {
+                        deleted++;
+                    }
+                }
+            }
+
+            System.out.println("Round " + round + ": deleted " + deleted + ", " + memoryReport(index));
+        }
+        System.out.println("Total time: " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+    }
+
+    private static String memoryReport(AutocompleteIndex index) {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc(); // Request garbage collection to get more accurate memory readings
+        String report = "heap used: " + Main.formatMemorySize(runtime.totalMemory() - runtime.freeMemory());
+        if (index instanceof OffHeapTernarySearchTree) {
+            OffHeapTernarySearchTree offHeap = (OffHeapTernarySearchTree) index;
+            report += ", nodes: " + offHeap.getNodeCount()
+                    + ", off-heap reserved: " + Main.formatMemorySize(offHeap.getOffHeapBytes());
+        }
+        return report;
+    }
+
+    /// Random lowercase word of 4 to 12 letters; most will not share much with the dictionary past the first letters.
+    private static String randomWord(Random random) {
+        int length = 4 + random.nextInt(9);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/// Lazily yields the completions of a prefix, most frequent first (ties in alphabetical order).
+///
+/// The frontier is a priority queue of unexpanded nodes, ranked by the highest frequency anywhere below them, and of
+/// words already found, ranked by their own frequency. A word is only handed out once nothing left in the frontier
+/// can beat it, so each `next()` expands just the nodes that could hold a better word. The frontier stays alive
+/// between calls, so fetching another page costs only the extra results; the subtree is never copied out as a whole.
+///
+/// The index must not be modified while an iterator over it is in use.
+///
+/// `N` is the engine's node type; the engine supplies the subtree bound and how to expand a node.
+public class CompletionIterator<N> implements Iterator<String> {
+    /// Pushes the children of `node` (and its own word, if any) back into the frontier. `path` is the text that
+    /// was given with the node in `addNode`.
+    public interface Expander<N> {
+        void expand(N node, String path, CompletionIterator<N> frontier);
+    }
+
+    /// Best first: higher bound, then nodes before words (so an equal word below a node is found before the tie is
+    /// settled), then words alphabetically.
+    private static final Comparator<Entry<?>> BEST_FIRST = Comparator.comparingInt((Entry<?> entry) -> entry.bound).reversed()
+            .thenComparing(entry -> entry.node == null)
+            .thenComparing(entry -> entry.node == null ? entry.path : "");
+
+    private final PriorityQueue<Entry<N>> frontier = new PriorityQueue<>(BEST_FIRST);
+    private final ToIntFunction<N> bound;
+    private final Expander<N> expander;
+    private int expandedNodes;
+
+    /// `bound` gives the highest word frequency at or below a node.
+    public CompletionIterator(ToIntFunction<N> bound, Expander<N> expander) {
+        this.bound = bound;
+        this.expander = expander;
+    }
+
+    /// Adds a node to expand later (null is ignored).
+    public void addNode(N node, String path) {
+        if (node != null) {
+            frontier.add(new Entry<>(node, path, bound.applyAsInt(node)));
+        }
+    }
+
+    /// Adds a finished word.
+    public void addWord(String word, int frequency) {
+        frontier.add(new Entry<>(null, word, frequency));
+    }
+
+    @Override
+    public boolean hasNext() {
+        Entry<N> top = frontier.peek();
+        while (top != null && top.node != null) {
+            frontier.poll();
+            expandedNodes++;
+            expander.expand(top.node, top.path, this);
+            top = frontier.peek();
+        }
+        return top != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return frontier.poll().path;
+    }
+
+    /// Frequency of the word `next()` would return. Only valid while `hasNext()` is true.
+    public int peekFrequency() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return frontier.peek().bound;
+    }
+
+    /// Up to `count` further completions, e.g. the next page of a "show more" list.
+    public List<String> next(int count) {
+        List<String> page = new ArrayList<>(count);
+        while (page.size() < count && hasNext()) {
+            page.add(next());
+        }
+        return page;
+    }
+
+    /// The remaining completions as an ordered, lazily evaluated stream.
+    public Stream<String> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /// Number of nodes expanded so far.
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /// Number of nodes and words waiting in the frontier.
+    public int getFrontierSize() {
+        return frontier.size();
+    }
+
+    /// A frontier item: a node (with the text before it) or, when `node` is null, a word.
+    private static class Entry<N> {
+        final N node;
+        final String path;
+        final int bound;
+
+        Entry(N node, String path, int bound) {
+            this.node = node;
+            this.path = path;
+            this.bound = bound;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjIntConsumer;
+
+/// Wraps any index so live updates survive a restart.
+///
+/// Every mutation is appended to a `MutationLog` before it is acknowledged. It is applied to the index first and only
+/// logged once that succeeded, so a mutation the index rejects (throws on) can never be replayed. A background task
+/// periodically writes a snapshot of the whole index and deletes the log segments the snapshot covers, so recovery
+/// only has to load the latest snapshot and replay the short tail of the log written after it.
+///
+/// Reads and writes may come from many threads: reads share a read lock, mutations take the write lock only to log
+/// and apply the change, and wait for the disk afterwards so concurrent writers share one fsync.
+public class DurableIndex implements AutocompleteIndex, Closeable {
+    private final AutocompleteIndex index;
+    private final MutationLog log;
+    private final Path directory;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService snapshotter;
+    private final long snapshotThreshold;
+    private final AtomicLong mutationsSinceSnapshot = new AtomicLong();
+    private final long recoveredRecords;
+    private final long recoveryNanos;
+
+    /// Recovers the state stored in `directory` into `emptyIndex` and starts logging to it.
+    /// `fsync` controls whether log batches are forced to disk. A snapshot is taken every `snapshotIntervalMillis`
+    /// once at least `snapshotThreshold` mutations were logged since the previous one (0 disables background snapshots).
+    public DurableIndex(Path directory, AutocompleteIndex emptyIndex, boolean fsync,
+                        long snapshotIntervalMillis, long snapshotThreshold) throws IOException {
+        this.index = emptyIndex;
+        this.directory = directory;
+        this.snapshotThreshold = snapshotThreshold;
+
+        long startTime = System.nanoTime();
+        long firstSegment = MutationLog.readLatestSnapshot(directory, emptyIndex::insert);
+        recoveredRecords = MutationLog.replay(directory, firstSegment, this::apply);
+        recoveryNanos = System.nanoTime() - startTime;
+
+        this.log = new MutationLog(directory, fsync);
+
+        if (snapshotIntervalMillis > 0) {
+            snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "index-snapshotter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotter.scheduleWithFixedDelay(this::snapshotIfDue,
+                    snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            snapshotter = null;
+        }
+    }
+
+    /// Sets the frequency of `word`, returning once the change is durable.
+    /// Throws IllegalArgumentException, without changing anything, if the word is too long for the log.
+    @Override
+    public void insert(String word, int frequency) {
+        MutationLog.checkWord(word);
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            index.insert(word, frequency);
+            sequence = appendToLog(MutationLog.OP_INSERT, word, frequency);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    /// Removes `word`, returning once the removal is durable. Nothing is logged if the word is absent.
+    @Override
+    public boolean delete(String word) {
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            if (!index.delete(word)) {
+                return false;
+            }
+            sequence = appendToLog(MutationLog.OP_DELETE, word, 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    /// Adds `delta` to the frequency of `word` (inserting it if absent) and returns the new frequency.
+    /// The resulting frequency is what gets logged, so replaying the log twice cannot count a bump twice.
+    public int increment(String word, int delta) {
+        MutationLog.checkWord(word);
+        long sequence;
+        int frequency;
+        lock.writeLock().lock();
+        try {
+            frequency = index.getFrequency(word) + delta;
+            index.insert(word, frequency);
+            sequence = appendToLog(MutationLog.OP_INSERT, word, frequency);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence);
+        return frequency;
+    }
+
+    @Override
+    public List<String> getSuggestions(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return index.getSuggestions(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getFrequency(String word) {
+        lock.readLock().lock();
+        try {
+            return index.getFrequency(word);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        lock.readLock().lock();
+        try {
+            index.forEachWord(action);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /// Writes a snapshot now and drops the log segments it makes redundant.
+    public synchronized void snapshot() throws IOException {
+        List<String> words = new ArrayList<>();
+        int[] frequencies;
+        long segment;
+
+        // Copy the words while writers are held off, so the copy matches the log split exactly.
+        lock.writeLock().lock();
+        try {
+            segment = log.rollSegment();
+            List<Integer> counts = new ArrayList<>();
+            index.forEachWord((word, frequency) -> {
+                words.add(word);
+                counts.add(frequency);
+            });
+            frequencies = new int[counts.size()];
+            for (int i = 0; i < frequencies.length; i++) {
+                frequencies[i] = counts.get(i);
+            }
+            mutationsSinceSnapshot.set(0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // The slow part (writing and fsyncing the file) happens while the index keeps serving.
+        MutationLog.writeSnapshot(directory, segment, words, frequencies);
+        log.deleteSegmentsBefore(segment);
+    }
+
+    /// Number of log records replayed when this index was opened.
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    /// Time spent loading the snapshot and replaying the log when this index was opened.
+    public long getRecoveryNanos() {
+        return recoveryNanos;
+    }
+
+    /// Number of write+fsync rounds of the log since it was opened.
+    public long getLogBatchCount() {
+        return log.getBatchCount();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.close();
+    }
+
+    private void snapshotIfDue() {
+        if (mutationsSinceSnapshot.get() < Math.max(1, snapshotThreshold)) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (IOException e) {
+            // The log still holds everything; the next round tries again.
+            System.err.println("Snapshot failed: " + e.getMessage());
+        }
+    }
+
+    private long appendToLog(byte operation, String word, int value) {
+        try {
+            long sequence = log.append(operation, word, value);
+            mutationsSinceSnapshot.incrementAndGet();
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        try {
+            log.awaitDurable(sequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /// Applies one replayed record.
+    private void apply(byte operation, String word, int value) {
+        if (operation == MutationLog.OP_INSERT) {
+            index.insert(word, value);
+        } else if (operation == MutationLog.OP_DELETE) {
+            index.delete(word);
+        } else {
+            throw new IllegalStateException("Unknown mutation log operation " + operation);
+        }
+    }
+}
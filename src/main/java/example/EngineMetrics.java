@@ -0,0 +1,143 @@
+package example;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/// Counters and histograms for one autocomplete engine. Safe to update from many threads; every update is a
+/// handful of atomic increments, cheap enough to leave on in production.
+/// The cache counters only move for engines that report cache lookups (`HybridIndex`); for the others they stay at 0.
+public class EngineMetrics implements EngineMetricsMBean, QueryProbe {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram nodesVisited = new LatencyHistogram();
+    private final LongAdder candidatesConsidered = new LongAdder();
+    private final LongAdder candidatesReturned = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private volatile long buildTimeNanos;
+    private volatile long buildWordCount;
+
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    @Override
+    public void queryFinished(int nodesVisited, int candidatesConsidered, int returned) {
+        this.nodesVisited.record(nodesVisited);
+        this.candidatesConsidered.add(candidatesConsidered);
+        this.candidatesReturned.add(returned);
+    }
+
+    @Override
+    public void cacheLookups(int hits, int misses) {
+        cacheHits.add(hits);
+        cacheMisses.add(misses);
+    }
+
+    public void recordBuild(long nanos, long wordCount) {
+        this.buildTimeNanos = nanos;
+        this.buildWordCount = wordCount;
+    }
+
+    /// The underlying latency histogram, for reports that need other percentiles.
+    public LatencyHistogram getLatencyHistogram() {
+        return latency;
+    }
+
+    @Override
+    public long getQueryCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return latency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return latency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLatencyP999Nanos() {
+        return latency.getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getLatencyMaxNanos() {
+        return latency.getMax();
+    }
+
+    @Override
+    public double getLatencyMeanNanos() {
+        return latency.getMean();
+    }
+
+    @Override
+    public long getNodesVisitedP50() {
+        return nodesVisited.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getNodesVisitedP99() {
+        return nodesVisited.getValueAtPercentile(99);
+    }
+
+    @Override
+    public double getNodesVisitedMean() {
+        return nodesVisited.getMean();
+    }
+
+    @Override
+    public long getCandidatesConsidered() {
+        return candidatesConsidered.sum();
+    }
+
+    @Override
+    public long getCandidatesReturned() {
+        return candidatesReturned.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        long total = hits + cacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getBuildTimeMillis() {
+        return buildTimeNanos / 1_000_000;
+    }
+
+    @Override
+    public long getBuildWordCount() {
+        return buildWordCount;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        nodesVisited.reset();
+        candidatesConsidered.reset();
+        candidatesReturned.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queries=%d p50=%dns p99=%dns p999=%dns max=%dns nodes/query=%.1f considered=%d returned=%d",
+                getQueryCount(), getLatencyP50Nanos(), getLatencyP99Nanos(), getLatencyP999Nanos(),
+                getLatencyMaxNanos(), getNodesVisitedMean(), getCandidatesConsidered(), getCandidatesReturned());
+    }
+}
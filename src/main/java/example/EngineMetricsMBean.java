@@ -0,0 +1,39 @@
+package example;
+
+/// JMX view of `EngineMetrics` (visible in jconsole / VisualVM under `example:type=AutocompleteEngine`).
+/// Latencies are in nanoseconds.
+public interface EngineMetricsMBean {
+    long getQueryCount();
+
+    long getLatencyP50Nanos();
+
+    long getLatencyP99Nanos();
+
+    long getLatencyP999Nanos();
+
+    long getLatencyMaxNanos();
+
+    double getLatencyMeanNanos();
+
+    long getNodesVisitedP50();
+
+    long getNodesVisitedP99();
+
+    double getNodesVisitedMean();
+
+    long getCandidatesConsidered();
+
+    long getCandidatesReturned();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRate();
+
+    long getBuildTimeMillis();
+
+    long getBuildWordCount();
+
+    void reset();
+}
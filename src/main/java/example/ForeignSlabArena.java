@@ -0,0 +1,35 @@
+package example;
+
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/// `SlabArena` on the incubating foreign memory API: every slab is a native segment of one shared `ResourceScope`,
+/// and closing the arena closes the scope, which frees all of them at once without waiting for the garbage collector.
+///
+/// Only usable with `--add-modules jdk.incubator.foreign`; `SlabArena.create()` loads it reflectively.
+class ForeignSlabArena implements SlabArena {
+    private static final long ALIGNMENT = 8;
+
+    private final ResourceScope scope = ResourceScope.newSharedScope();
+
+    @Override
+    public ByteBuffer allocate(int bytes) {
+        // Native segments start zeroed, like direct buffers.
+        return MemorySegment.allocateNative(bytes, ALIGNMENT, scope).asByteBuffer().order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public void close() {
+        if (scope.isAlive()) {
+            scope.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "foreign";
+    }
+}
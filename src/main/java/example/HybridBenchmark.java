@@ -0,0 +1,90 @@
+package example;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/// Short-prefix latency and memory of `HybridIndex` against the Trie, the TST and the off-heap TST.
+/// The dictionary is inflated by appending letter suffixes to every CSV word, each engine is loaded on its own
+/// (heap growth measured around the load, once the previous engine is unreachable), and queries use prefixes of 1, 2
+/// and 3 letters cut from random words. An engine may be listed twice to see how much the numbers move between runs.
+///
+/// Usage: HybridBenchmark [copies] [queries] [engines=trie,tst,offheap,hybrid]
+public class HybridBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 5_000;
+        String[] engines = (args.length > 2 ? args[2] : "trie,tst,offheap,hybrid").split(",");
+
+        List<String> words = new ArrayList<>();
+        List<Integer> frequencies = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> {
+            for (int copy = 0; copy < copies; copy++) {
+                words.add(word + OffHeapGcBenchmark.suffix(copy));
+                frequencies.add(frequency);
+            }
+        });
+        System.out.println("Words: " + words.size());
+
+        Random random = new Random(8);
+        String[] sampled = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            sampled[i] = words.get(random.nextInt(words.size()));
+        }
+
+        System.out.println(String.format("%-8s %10s %12s %22s %22s %22s", "engine", "load ms", "memory",
+                "1 letter p50/p99 us", "2 letters p50/p99 us", "3 letters p50/p99 us"));
+        for (String engine : engines) {
+            System.out.println(run(engine, words, frequencies, sampled));
+        }
+    }
+
+    /// Loads and queries one engine and returns its table row. The engine is only reachable from this call, so it is
+    /// gone before the next engine's memory reading.
+    private static String run(String engine, List<String> words, List<Integer> frequencies, String[] sampled)
+            throws InterruptedException {
+        long heapBefore = Main.usedHeap();
+        long startTime = System.nanoTime();
+        AutocompleteIndex index = Main.createIndex(engine);
+        for (int i = 0; i < words.size(); i++) {
+            index.insert(words.get(i), frequencies.get(i));
+        }
+        long loadTime = System.nanoTime() - startTime;
+        long memory = Main.usedHeap() - heapBefore;
+        Reference.reachabilityFence(index); // Otherwise the JIT may let the index be collected before the reading.
+        if (index instanceof OffHeapTernarySearchTree) {
+            memory += ((OffHeapTernarySearchTree) index).getOffHeapBytes();
+        }
+
+        StringBuilder row = new StringBuilder(String.format("%-8s %10d %12s", engine, loadTime / 1_000_000,
+                Main.formatMemorySize(memory)));
+        for (int length = 1; length <= 3; length++) {
+            LatencyHistogram latency = measure(index, sampled, length);
+            row.append(String.format(" %22s", latency.getValueAtPercentile(50) / 1000 + " / "
+                    + latency.getValueAtPercentile(99) / 1000));
+        }
+        if (index instanceof HybridIndex) {
+            row.append("  (table depth ").append(((HybridIndex) index).getDepth()).append(')');
+        }
+        if (index instanceof OffHeapTernarySearchTree) {
+            ((OffHeapTernarySearchTree) index).close();
+        }
+        return row.toString();
+    }
+
+    private static LatencyHistogram measure(AutocompleteIndex index, String[] sampled, int length) {
+        for (String word : sampled) {
+            index.getSuggestions(word.substring(0, Math.min(length, word.length())), 10); // Warm-up.
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        for (String word : sampled) {
+            String prefix = word.substring(0, Math.min(length, word.length()));
+            long startTime = System.nanoTime();
+            index.getSuggestions(prefix, 10);
+            latency.record(System.nanoTime() - startTime);
+        }
+        return latency;
+    }
+}
@@ -0,0 +1,660 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/// Direct-indexed top levels with compact TSTs below.
+///
+/// The first one or two letters of a lowercase word select a slot in a dense table (26 or 26x26 entries), so the
+/// levels with the highest fan-out cost one array lookup instead of a HashMap probe (Trie) or a chain of binary
+/// comparisons (TST). Each slot holds a ternary search tree of the rest of its words, stored as records in one int
+/// array rather than one object per node. Words that do not fit the table (shorter than the table depth, or not
+/// starting with a-z) live in one more tree, `other`.
+///
+/// Every slot also remembers the top words of its whole subtree, so prefixes shorter than or equal to the table depth
+/// (the expensive ones: "a" has thousands of completions) merge at most 26 short cached lists instead of walking the
+/// subtrees. A slot's cache is dropped whenever one of its words changes.
+///
+/// The table depth is either fixed or, by default, chosen from the data: it is re-evaluated every time the word
+/// count doubles, and two letters are used once an occupied two-letter slot averages enough words to be worth it.
+public class HybridIndex implements AutocompleteIndex {
+    private static final int ALPHABET = 26;
+    private static final int MAX_DEPTH = 2;
+    private static final int MIN_WORDS_PER_SLOT = 64; // Below this a second table level buys less than it costs.
+    private static final int FIRST_DEPTH_CHECK = 1024;
+
+    private final boolean automaticDepth;
+    private int depth;
+    private CompactTST[] slots;
+    private CompactTST other = new CompactTST("");
+    private int wordCount;
+    private int nextDepthCheck = FIRST_DEPTH_CHECK;
+
+    private volatile QueryProbe probe; // Optional metrics hook, see setQueryProbe.
+
+    /// Picks the table depth from the words as they are loaded.
+    public HybridIndex() {
+        this(1, true);
+    }
+
+    /// Uses a fixed table depth of 1 or 2 letters.
+    public HybridIndex(int depth) {
+        this(depth, false);
+    }
+
+    private HybridIndex(int depth, boolean automaticDepth) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Table depth must be 1 or 2, got " + depth);
+        }
+        this.depth = depth;
+        this.automaticDepth = automaticDepth;
+        this.slots = new CompactTST[tableSize(depth)];
+    }
+
+    @Override
+    public void insert(String word, int frequency) {
+        if (word.isEmpty()) return; // Skips over empty words, like the other engines.
+
+        if (treeFor(word, true).insert(word, frequency)) {
+            wordCount++;
+            if (automaticDepth && wordCount >= nextDepthCheck) {
+                nextDepthCheck *= 2;
+                int chosen = chooseDepth();
+                if (chosen != depth) {
+                    redistribute(chosen);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(String word) {
+        if (word.isEmpty()) return false;
+
+        int slot = slotOf(word);
+        CompactTST tree = slot < 0 ? other : slots[slot];
+        if (tree == null || !tree.delete(word)) {
+            return false;
+        }
+        wordCount--;
+        if (slot >= 0 && tree.size() == 0) {
+            slots[slot] = null; // Give the arrays back.
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> getSuggestions(String prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        TopK best = new TopK(limit);
+        // Nodes visited, candidates considered, cache hits and cache misses, reported to the probe.
+        int[] counters = new int[4];
+
+        int slot = slotOf(prefix);
+        if (slot >= 0) {
+            CompactTST tree = slots[slot];
+            if (tree != null) {
+                tree.collectTopK(prefix, best, counters);
+            }
+        } else {
+            // The prefix is shorter than the table or not a-z: the fallback tree, plus every slot it covers.
+            other.collectTopK(prefix, best, counters);
+            int first = lowercasePrefixIndex(prefix);
+            if (first >= 0) {
+                int span = tableSize(depth - prefix.length());
+                for (int i = first * span; i < (first + 1) * span; i++) {
+                    if (slots[i] != null) {
+                        slots[i].collectTopK(prefix, best, counters);
+                    }
+                }
+            }
+        }
+
+        List<String> suggestions = best.drainWords();
+
+        QueryProbe probe = this.probe;
+        if (probe != null) {
+            probe.queryFinished(counters[0], counters[1], suggestions.size());
+            if (counters[2] + counters[3] > 0) {
+                probe.cacheLookups(counters[2], counters[3]);
+            }
+        }
+        return suggestions;
+    }
+
+    @Override
+    public void setQueryProbe(QueryProbe probe) {
+        this.probe = probe;
+    }
+
+    @Override
+    public int getFrequency(String word) {
+        if (word.isEmpty()) return 0;
+        int slot = slotOf(word);
+        CompactTST tree = slot < 0 ? other : slots[slot];
+        return tree == null ? 0 : tree.getFrequency(word);
+    }
+
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        other.forEachWord(action);
+        for (CompactTST tree : slots) {
+            if (tree != null) {
+                tree.forEachWord(action);
+            }
+        }
+    }
+
+    /// Number of distinct words stored.
+    public int size() {
+        return wordCount;
+    }
+
+    /// Number of letters resolved by the dense table.
+    public int getDepth() {
+        return depth;
+    }
+
+    /// Number of live TST nodes across all slots and the fallback tree.
+    public int getNodeCount() {
+        int nodes = other.getNodeCount();
+        for (CompactTST tree : slots) {
+            if (tree != null) {
+                nodes += tree.getNodeCount();
+            }
+        }
+        return nodes;
+    }
+
+    /// Finds (or, if `create` is set, makes) the tree a word belongs in.
+    private CompactTST treeFor(String word, boolean create) {
+        int slot = slotOf(word);
+        if (slot < 0) {
+            return other;
+        }
+        if (slots[slot] == null && create) {
+            slots[slot] = new CompactTST(word.substring(0, depth));
+        }
+        return slots[slot];
+    }
+
+    /// Table slot of a word or prefix, or -1 if it is shorter than the table depth or its first letters are not a-z.
+    private int slotOf(String word) {
+        return word.length() < depth ? -1 : lowercasePrefixIndex(word.substring(0, depth));
+    }
+
+    /// Base-26 number of an all a-z string, or -1 if it has any other character.
+    private static int lowercasePrefixIndex(String letters) {
+        int index = 0;
+        for (int i = 0; i < letters.length(); i++) {
+            char c = letters.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return -1;
+            }
+            index = index * ALPHABET + (c - 'a');
+        }
+        return index;
+    }
+
+    private static int tableSize(int depth) {
+        int size = 1;
+        for (int i = 0; i < depth; i++) {
+            size *= ALPHABET;
+        }
+        return size;
+    }
+
+    /// Two table levels if the words that have two leading letters spread thick enough over the 26x26 slots they use.
+    private int chooseDepth() {
+        int[] counts = new int[tableSize(MAX_DEPTH)];
+        int[] tableWords = new int[1];
+        forEachWord((word, frequency) -> {
+            int slot = word.length() < MAX_DEPTH ? -1 : lowercasePrefixIndex(word.substring(0, MAX_DEPTH));
+            if (slot >= 0) {
+                counts[slot]++;
+                tableWords[0]++;
+            }
+        });
+        int occupied = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                occupied++;
+            }
+        }
+        return occupied > 0 && tableWords[0] / occupied >= MIN_WORDS_PER_SLOT ? MAX_DEPTH : 1;
+    }
+
+    /// Rebuilds every tree for a new table depth.
+    private void redistribute(int newDepth) {
+        List<String> words = new ArrayList<>(wordCount);
+        int[] frequencies = new int[wordCount];
+        forEachWord((word, frequency) -> {
+            frequencies[words.size()] = frequency;
+            words.add(word);
+        });
+
+        depth = newDepth;
+        slots = new CompactTST[tableSize(newDepth)];
+        other = new CompactTST("");
+        for (int i = 0; i < words.size(); i++) {
+            treeFor(words.get(i), true).insert(words.get(i), frequencies[i]);
+        }
+    }
+
+    /// Ternary search tree over the words sharing `head`, keyed by the rest of each word.
+    /// Each node is a record of six ints in one array (letter and end-of-word flag, frequency, left, middle, right,
+    /// and the highest frequency in the node's subtree), so following a link touches one cache line instead of one
+    /// object header plus fields. Node 0 is "no node"; deleted nodes are chained through their middle link into a
+    /// free list and reused. As in `TernarySearchTree`, the subtree maximum lets top-K collection skip every subtree
+    /// that cannot beat the weakest word of a full heap.
+    static class CompactTST {
+        private static final int NULL = 0;
+        private static final int NODE_INTS = 6;
+        private static final int DATA = 0; // Letter in the low 16 bits, END_OF_WORD above.
+        private static final int FREQUENCY = 1;
+        private static final int LEFT = 2;
+        private static final int MIDDLE = 3;
+        private static final int RIGHT = 4;
+        private static final int MAX = 5; // Integer.MIN_VALUE while there is no word in the subtree.
+        private static final int END_OF_WORD = 1 << 16;
+        private static final int CACHED_WORDS = 16; // Whole-tree top lists are cached up to this length.
+
+        private final String head;
+        private int[] nodes = new int[8 * NODE_INTS];
+        private int root = NULL;
+        private int nextNode = 1;
+        private int freeList = NULL;
+        private int freeCount;
+
+        private boolean headIsWord; // The word equal to `head` itself has no node.
+        private int headFrequency;
+        private int wordCount;
+
+        private volatile TopWords topWords; // Best words of the whole tree, or null after a change.
+
+        CompactTST(String head) {
+            this.head = head;
+        }
+
+        /// Returns true if the word was new.
+        boolean insert(String word, int wordFrequency) {
+            topWords = null;
+            if (word.length() == head.length()) {
+                boolean added = !headIsWord;
+                headIsWord = true;
+                headFrequency = wordFrequency;
+                if (added) {
+                    wordCount++;
+                }
+                return added;
+            }
+
+            int index = head.length();
+            char c = word.charAt(index);
+            if (root == NULL) {
+                root = allocate(c);
+            }
+            int node = root;
+            int[] path = new int[word.length() * 2]; // Nodes passed on the way down, whose maxima may change.
+            int pathLength = 0;
+            while (true) {
+                if (pathLength == path.length) {
+                    path = Arrays.copyOf(path, path.length * 2);
+                }
+                path[pathLength++] = node;
+                int link;
+                if (c < data(node)) {
+                    link = LEFT;
+                } else if (c > data(node)) {
+                    link = RIGHT;
+                } else if (index < word.length() - 1) {
+                    c = word.charAt(++index);
+                    link = MIDDLE;
+                } else {
+                    boolean added = !isEndOfWord(node);
+                    nodes[node * NODE_INTS + DATA] |= END_OF_WORD;
+                    nodes[node * NODE_INTS + FREQUENCY] = wordFrequency;
+                    if (added) {
+                        wordCount++;
+                    }
+                    // Bottom-up, since a re-inserted word may have lowered its frequency.
+                    for (int i = pathLength - 1; i >= 0; i--) {
+                        updateMax(path[i]);
+                    }
+                    return added;
+                }
+                if (get(node, link) == NULL) {
+                    int child = allocate(c); // May grow the array, so it is read back afterwards.
+                    set(node, link, child);
+                }
+                node = get(node, link);
+            }
+        }
+
+        boolean delete(String word) {
+            boolean[] found = new boolean[1];
+            if (word.length() == head.length()) {
+                found[0] = headIsWord;
+                headIsWord = false;
+                headFrequency = 0;
+            } else {
+                root = delete(root, word, head.length(), found);
+            }
+            if (found[0]) {
+                wordCount--;
+                topWords = null;
+            }
+            return found[0];
+        }
+
+        /// Recursive helper for deletion, returns the (possibly replaced) subtree root.
+        private int delete(int node, String word, int index, boolean[] found) {
+            if (node == NULL) {
+                return NULL;
+            }
+            char c = word.charAt(index);
+            if (c < data(node)) {
+                set(node, LEFT, delete(get(node, LEFT), word, index, found));
+                updateMax(node);
+                return node;
+            } else if (c > data(node)) {
+                set(node, RIGHT, delete(get(node, RIGHT), word, index, found));
+                updateMax(node);
+                return node;
+            }
+
+            if (index < word.length() - 1) {
+                set(node, MIDDLE, delete(get(node, MIDDLE), word, index + 1, found));
+            } else if (isEndOfWord(node)) {
+                nodes[node * NODE_INTS + DATA] &= ~END_OF_WORD;
+                nodes[node * NODE_INTS + FREQUENCY] = 0;
+                found[0] = true;
+            }
+
+            if (isEndOfWord(node) || get(node, MIDDLE) != NULL) {
+                updateMax(node);
+                return node; // Still on the path of some other word.
+            }
+            int replacement = removeNode(node);
+            release(node);
+            return replacement;
+        }
+
+        /// Unlinks `node` from its binary search tree level and returns what takes its place.
+        private int removeNode(int node) {
+            if (get(node, LEFT) == NULL) {
+                return get(node, RIGHT);
+            }
+            if (get(node, RIGHT) == NULL) {
+                return get(node, LEFT);
+            }
+            int parent = node;
+            int successor = get(node, RIGHT);
+            while (get(successor, LEFT) != NULL) {
+                parent = successor;
+                successor = get(successor, LEFT);
+            }
+            if (parent != node) {
+                set(parent, LEFT, get(successor, RIGHT));
+                set(successor, RIGHT, get(node, RIGHT));
+                updateLeftSpine(get(successor, RIGHT), parent);
+            }
+            set(successor, LEFT, get(node, LEFT));
+            updateMax(successor);
+            return successor;
+        }
+
+        /// Refreshes the subtree maximum of the nodes from `top` down the left links to `bottom`, bottom-up.
+        /// These are the nodes whose leftmost branch lost the successor in removeNode.
+        private void updateLeftSpine(int top, int bottom) {
+            if (top != bottom) {
+                updateLeftSpine(get(top, LEFT), bottom);
+            }
+            updateMax(top);
+        }
+
+        /// Recomputes the subtree maximum of `node` from its own word and its three children.
+        private void updateMax(int node) {
+            int base = node * NODE_INTS;
+            int max = (nodes[base + DATA] & END_OF_WORD) != 0 ? nodes[base + FREQUENCY] : Integer.MIN_VALUE;
+            for (int link = LEFT; link <= RIGHT; link++) {
+                int child = nodes[base + link];
+                if (child != NULL) {
+                    max = Math.max(max, nodes[child * NODE_INTS + MAX]);
+                }
+            }
+            nodes[base + MAX] = max;
+        }
+
+        int getFrequency(String word) {
+            if (word.length() == head.length()) {
+                return headIsWord ? headFrequency : 0;
+            }
+            int node = find(word, null);
+            return node != NULL && isEndOfWord(node) ? get(node, FREQUENCY) : 0;
+        }
+
+        /// Offers the best words of this tree that start with `prefix` (which may be shorter than the head).
+        void collectTopK(String prefix, TopK best, int[] counters) {
+            if (prefix.length() <= head.length()) {
+                if (best.getLimit() <= CACHED_WORDS) {
+                    TopWords cached = topWords;
+                    if (cached == null) {
+                        cached = computeTopWords();
+                        topWords = cached;
+                        counters[3]++;
+                    } else {
+                        counters[2]++;
+                    }
+                    for (int i = 0; i < cached.words.length; i++) {
+                        best.offer(cached.words[i], cached.frequencies[i]);
+                    }
+                    counters[1] += cached.words.length;
+                } else {
+                    collectAll(best, counters);
+                }
+                return;
+            }
+
+            int node = find(prefix, counters);
+            if (node == NULL) {
+                return;
+            }
+            if (isEndOfWord(node)) {
+                best.offer(prefix, get(node, FREQUENCY));
+                counters[1]++;
+            }
+            collect(get(node, MIDDLE), prefix, best, counters);
+        }
+
+        void forEachWord(ObjIntConsumer<String> action) {
+            if (headIsWord) {
+                action.accept(head, headFrequency);
+            }
+            forEachWord(root, new StringBuilder(head), action);
+        }
+
+        private void forEachWord(int node, StringBuilder path, ObjIntConsumer<String> action) {
+            if (node == NULL) {
+                return;
+            }
+            forEachWord(get(node, LEFT), path, action);
+            path.append(data(node));
+            if (isEndOfWord(node)) {
+                action.accept(path.toString(), get(node, FREQUENCY));
+            }
+            forEachWord(get(node, MIDDLE), path, action);
+            path.setLength(path.length() - 1);
+            forEachWord(get(node, RIGHT), path, action);
+        }
+
+        int size() {
+            return wordCount;
+        }
+
+        int getNodeCount() {
+            return nextNode - 1 - freeCount;
+        }
+
+        private TopWords computeTopWords() {
+            TopK top = new TopK(CACHED_WORDS);
+            collectAll(top, new int[4]);
+            List<WordFrequency> ranked = top.drain();
+            String[] words = new String[ranked.size()];
+            int[] frequencies = new int[ranked.size()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = ranked.get(i).getWord();
+                frequencies[i] = ranked.get(i).getFrequency();
+            }
+            return new TopWords(words, frequencies);
+        }
+
+        private void collectAll(TopK best, int[] counters) {
+            if (headIsWord) {
+                best.offer(head, headFrequency);
+                counters[1]++;
+            }
+            collect(root, head, best, counters);
+        }
+
+        /// Offers every word below `start` (whose letters are preceded by `prefix`), skipping subtrees whose maximum
+        /// cannot beat the weakest of a full heap. Walks iteratively with an explicit stack, the same way as
+        /// `OffHeapTernarySearchTree.walk`.
+        private void collect(int start, String prefix, TopK best, int[] counters) {
+            if (start == NULL) {
+                return;
+            }
+
+            int[] nodeStack = new int[64];
+            int[] depthStack = new int[64];
+            char[] path = new char[32]; // Letters below the prefix, path[depth] belongs to the node being visited.
+            int top = 0;
+            nodeStack[top] = start;
+            depthStack[top++] = 0;
+
+            while (top > 0) {
+                top--;
+                int node = nodeStack[top];
+                int depth = depthStack[top];
+                int base = node * NODE_INTS;
+                if (!best.accepts(nodes[base + MAX])) {
+                    continue;
+                }
+                counters[0]++;
+
+                if (depth >= path.length) {
+                    path = Arrays.copyOf(path, path.length * 2);
+                }
+                int data = nodes[base + DATA];
+                path[depth] = (char) data;
+
+                if ((data & END_OF_WORD) != 0) {
+                    counters[1]++;
+                    int wordFrequency = nodes[base + FREQUENCY];
+                    if (best.accepts(wordFrequency)) { // Before building the word.
+                        best.offer(prefix + new String(path, 0, depth + 1), wordFrequency);
+                    }
+                }
+
+                if (top + 3 > nodeStack.length) {
+                    nodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+                    depthStack = Arrays.copyOf(depthStack, depthStack.length * 2);
+                }
+                // The middle child is pushed last so its subtree is finished before a sibling overwrites path[depth].
+                if (nodes[base + RIGHT] != NULL) {
+                    nodeStack[top] = nodes[base + RIGHT];
+                    depthStack[top++] = depth;
+                }
+                if (nodes[base + LEFT] != NULL) {
+                    nodeStack[top] = nodes[base + LEFT];
+                    depthStack[top++] = depth;
+                }
+                if (nodes[base + MIDDLE] != NULL) {
+                    nodeStack[top] = nodes[base + MIDDLE];
+                    depthStack[top++] = depth + 1;
+                }
+            }
+        }
+
+        /// Node of the last letter of `word` (which starts with `head`), or NULL.
+        private int find(String word, int[] counters) {
+            int index = head.length();
+            int node = root;
+            while (node != NULL) {
+                if (counters != null) {
+                    counters[0]++;
+                }
+                char c = word.charAt(index);
+                if (c < data(node)) {
+                    node = get(node, LEFT);
+                } else if (c > data(node)) {
+                    node = get(node, RIGHT);
+                } else if (index == word.length() - 1) {
+                    return node;
+                } else {
+                    index++;
+                    node = get(node, MIDDLE);
+                }
+            }
+            return NULL;
+        }
+
+        private char data(int node) {
+            return (char) nodes[node * NODE_INTS + DATA];
+        }
+
+        private boolean isEndOfWord(int node) {
+            return (nodes[node * NODE_INTS + DATA] & END_OF_WORD) != 0;
+        }
+
+        private int get(int node, int field) {
+            return nodes[node * NODE_INTS + field];
+        }
+
+        private void set(int node, int field, int value) {
+            nodes[node * NODE_INTS + field] = value;
+        }
+
+        private int allocate(char c) {
+            int node;
+            if (freeList != NULL) {
+                node = freeList;
+                freeList = get(node, MIDDLE);
+                freeCount--;
+            } else {
+                if ((nextNode + 1) * NODE_INTS > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length + (nodes.length >> 1));
+                }
+                node = nextNode++;
+            }
+            int base = node * NODE_INTS;
+            nodes[base + DATA] = c;
+            nodes[base + FREQUENCY] = 0;
+            nodes[base + LEFT] = nodes[base + MIDDLE] = nodes[base + RIGHT] = NULL;
+            nodes[base + MAX] = Integer.MIN_VALUE;
+            return node;
+        }
+
+        private void release(int node) {
+            set(node, MIDDLE, freeList);
+            freeList = node;
+            freeCount++;
+        }
+    }
+
+    /// Immutable top list of a slot, best first, so queries on different threads can share it.
+    private static class TopWords {
+        final String[] words;
+        final int[] frequencies;
+
+        TopWords(String[] words, int[] frequencies) {
+            this.words = words;
+            this.frequencies = frequencies;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/// Compares the scalar and the vector `LabelScanner` (nanoTime loops with warm-up rounds; the JVM is not forked
+/// per measurement as JMH would, so run it a few times).
+///
+/// Two measurements: prefix descent (`PackedTrie.findNode` over full dictionary words, which mostly meets nodes with
+/// a handful of children) and raw `indexOf` over label runs of fixed widths, which shows where SIMD starts to pay off.
+/// The vector path only exists when the JVM runs with `--add-modules jdk.incubator.vector`.
+///
+/// Usage: LabelScanBenchmark [copies] [rounds]
+public class LabelScanBenchmark {
+    private static final int[] WIDTHS = {4, 8, 16, 26, 64};
+    private static final int LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+
+        List<LabelScanner> scanners = new ArrayList<>();
+        scanners.add(LabelScanner.scalar());
+        LabelScanner available = LabelScanner.create();
+        if (!available.getName().equals("scalar")) {
+            scanners.add(available);
+        } else {
+            System.out.println("Vector API not enabled (run with --add-modules jdk.incubator.vector); scalar only");
+        }
+
+        List<String> words = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> {
+            for (int copy = 0; copy < copies; copy++) {
+                words.add(word + OffHeapGcBenchmark.suffix(copy));
+            }
+        });
+        Random random = new Random(17);
+        String[] lookups = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = words.get(random.nextInt(words.size()));
+        }
+
+        for (LabelScanner scanner : scanners) {
+            PackedTrie trie = new PackedTrie(scanner);
+            for (String word : words) {
+                trie.insert(word, 1);
+            }
+            trie.pack();
+
+            long checksum = 0;
+            double best = Double.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                int[] visited = new int[1];
+                long startTime = System.nanoTime();
+                for (String word : lookups) {
+                    checksum += trie.findNode(word, visited);
+                }
+                best = Math.min(best, (double) (System.nanoTime() - startTime) / LOOKUPS);
+            }
+            System.out.println(String.format("%-20s descent of %d words: %6.1f ns/word (checksum %d)",
+                    scanner.getName(), words.size(), best, checksum));
+        }
+
+        for (int width : WIDTHS) {
+            char[] labels = new char[width + LabelScanner.PADDING];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = i < width ? (char) ('!' + i * 2) : Character.MAX_VALUE;
+            }
+            char[] targets = new char[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                targets[i] = (char) ('!' + random.nextInt(width * 2)); // About half are misses.
+            }
+            StringBuilder row = new StringBuilder(String.format("width %3d:", width));
+            for (LabelScanner scanner : scanners) {
+                long checksum = 0;
+                double best = Double.MAX_VALUE;
+                for (int round = 0; round < rounds; round++) {
+                    long startTime = System.nanoTime();
+                    for (char target : targets) {
+                        checksum += scanner.indexOf(labels, 0, width, target);
+                    }
+                    best = Math.min(best, (double) (System.nanoTime() - startTime) / LOOKUPS);
+                }
+                row.append(String.format("  %s %5.2f ns (checksum %d)", scanner.getName(), best, checksum));
+            }
+            System.out.println(row);
+        }
+    }
+}
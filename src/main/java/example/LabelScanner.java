@@ -0,0 +1,59 @@
+package example;
+
+/// Finds a child by its letter in the packed child-label arrays of `PackedTrie`.
+///
+/// Two implementations exist: a plain loop, and `VectorLabelScanner`, which compares a whole vector of labels against
+/// the letter in one SIMD operation using the incubating Vector API. The vector one is only available when the JVM
+/// runs with `--add-modules jdk.incubator.vector`; `create()` falls back to the loop otherwise, or when
+/// `-Doogl.vector=false` asks for it.
+public interface LabelScanner {
+    /// Label arrays handed to a scanner must have this many readable slots after the last real label, so a vector
+    /// load starting at any label stays inside the array.
+    int PADDING = 32;
+
+    /// Index of `c` in `labels[from, to)`, or -1 if it is not there.
+    int indexOf(char[] labels, int from, int to, char c);
+
+    /// Short name for benchmark output.
+    String getName();
+
+    /// The vector scanner if the Vector API is usable in this JVM and not switched off, otherwise the scalar one.
+    static LabelScanner create() {
+        if (!"false".equals(System.getProperty("oogl.vector"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                // Loaded reflectively: linking it without the module would fail.
+                return (LabelScanner) Class.forName("example.VectorLabelScanner").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("Vector label scanning unavailable, using the scalar loop: " + e);
+            }
+        }
+        return scalar();
+    }
+
+    static LabelScanner scalar() {
+        return new Scalar();
+    }
+
+    /// Plain loop. The labels of a node are sorted, so it stops as soon as it passes `c`.
+    class Scalar implements LabelScanner {
+        @Override
+        public int indexOf(char[] labels, int from, int to, char c) {
+            for (int i = from; i < to; i++) {
+                char label = labels[i];
+                if (label == c) {
+                    return i;
+                }
+                if (label > c) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+    }
+}
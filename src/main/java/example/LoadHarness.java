@@ -0,0 +1,224 @@
+package example;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/// Load test answering "how many concurrent typists can one box serve".
+///
+/// Each worker thread is one typist. It either synthesizes keystroke sessions from the dictionary (words picked with
+/// a Zipf distribution over frequency rank, one prefix query per keystroke, occasional typos fixed with backspace,
+/// sessions abandoned once a suggestion would have been picked) or replays a recorded query log (one prefix per line).
+/// Between keystrokes the typist waits an exponentially distributed think time; with a think time of 0 every thread
+/// runs flat out, which measures raw throughput instead.
+///
+/// For every engine it reports throughput, latency percentiles and the allocation rate of the worker threads.
+///
+/// Usage: LoadHarness [engines=trie,tst,offheap] [typists=8] [seconds=10] [thinkMillis=0] [queryLogFile]
+public class LoadHarness {
+    private static final int SUGGESTION_LIMIT = 5;
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final double TYPO_PROBABILITY = 0.03;
+    private static final double ACCEPT_PROBABILITY = 0.15; // Chance per keystroke (after two letters) to pick a suggestion.
+    private static final int WARMUP_SECONDS = 2;
+
+    public static void main(String[] args) throws Exception {
+        String[] engines = (args.length > 0 ? args[0] : "trie,tst,offheap").split(",");
+        int typists = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        double thinkMillis = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        List<String> queryLog = args.length > 4 ? Files.readAllLines(Paths.get(args[4]), StandardCharsets.UTF_8) : null;
+
+        List<String> words = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> words.add(word)); // Already sorted by count.
+        double[] zipf = zipfCumulative(words.size(), ZIPF_EXPONENT);
+
+        System.out.println("Typists: " + typists + ", think time: " + thinkMillis + " ms, workload: "
+                + (queryLog == null ? "synthetic keystrokes" : "replay of " + queryLog.size() + " queries"));
+        System.out.println(String.format("%-10s %12s %10s %10s %10s %10s %12s %12s",
+                "engine", "queries/s", "p50 ns", "p99 ns", "p999 ns", "max ns", "alloc MB/s", "alloc B/q"));
+
+        for (String engine : engines) {
+            AutocompleteIndex index = Main.createIndex(engine.trim());
+            Main.loadDictionary("filtered_words.csv", index);
+
+            run(index, typists, WARMUP_SECONDS, thinkMillis, words, zipf, queryLog); // Lets the JIT settle.
+            Result result = run(index, typists, seconds, thinkMillis, words, zipf, queryLog);
+
+            LatencyHistogram latency = result.latency;
+            double elapsedSeconds = result.elapsedNanos / 1e9;
+            System.out.println(String.format("%-10s %12.0f %10d %10d %10d %10d %12s %12s",
+                    engine.trim(), latency.getCount() / elapsedSeconds,
+                    latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                    latency.getValueAtPercentile(99.9), latency.getMax(),
+                    result.allocatedBytes < 0 ? "---" : String.format("%.1f", result.allocatedBytes / elapsedSeconds / (1024 * 1024)),
+                    result.allocatedBytes < 0 ? "---" : String.valueOf(result.allocatedBytes / Math.max(1, latency.getCount()))));
+        }
+    }
+
+    /// Outcome of one timed run.
+    static class Result {
+        final LatencyHistogram latency = new LatencyHistogram();
+        long elapsedNanos;
+        long allocatedBytes = -1; // -1 when the JVM cannot count per-thread allocations.
+    }
+
+    static Result run(AutocompleteIndex index, int typists, int seconds, double thinkMillis,
+                      List<String> words, double[] zipf, List<String> queryLog) throws InterruptedException {
+        Result result = new Result();
+        AtomicLong allocated = new AtomicLong();
+        boolean countAllocations = allocationCounter() != null;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < typists; t++) {
+            Random random = new Random(1000 + t);
+            Supplier<String> queries = queryLog == null
+                    ? new KeystrokeSession(words, zipf, random)
+                    : new Replay(queryLog, queryLog.isEmpty() ? 0 : t * queryLog.size() / typists);
+            workers.add(new Thread(() -> {
+                long allocatedBefore = countAllocations ? threadAllocatedBytes() : 0;
+                while (System.nanoTime() < deadline) {
+                    String prefix = queries.get();
+                    long startTime = System.nanoTime();
+                    index.getSuggestions(prefix, SUGGESTION_LIMIT);
+                    result.latency.record(System.nanoTime() - startTime);
+                    think(random, thinkMillis);
+                }
+                if (countAllocations) {
+                    allocated.addAndGet(threadAllocatedBytes() - allocatedBefore);
+                }
+            }, "typist-" + t));
+        }
+
+        long startTime = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        result.elapsedNanos = System.nanoTime() - startTime;
+        if (countAllocations) {
+            result.allocatedBytes = allocated.get();
+        }
+        return result;
+    }
+
+    /// Produces the prefix queries of endless typing sessions, one keystroke at a time.
+    static class KeystrokeSession implements Supplier<String> {
+        private final List<String> words;
+        private final double[] zipf;
+        private final Random random;
+        private final ArrayDeque<String> pending = new ArrayDeque<>();
+
+        KeystrokeSession(List<String> words, double[] zipf, Random random) {
+            this.words = words;
+            this.zipf = zipf;
+            this.random = random;
+        }
+
+        @Override
+        public String get() {
+            while (pending.isEmpty()) {
+                startSession();
+            }
+            return pending.poll();
+        }
+
+        /// Queues the prefixes seen while typing one word.
+        private void startSession() {
+            String word = words.get(sampleRank(zipf, random.nextDouble()));
+            for (int typed = 1; typed <= word.length(); typed++) {
+                String prefix = word.substring(0, typed);
+                if (random.nextDouble() < TYPO_PROBABILITY) {
+                    // A wrong letter, then backspace back to the correct prefix so far.
+                    pending.add(word.substring(0, typed - 1) + (char) ('a' + random.nextInt(26)));
+                    if (typed > 1) {
+                        pending.add(word.substring(0, typed - 1));
+                    }
+                }
+                pending.add(prefix);
+                if (typed >= 2 && random.nextDouble() < ACCEPT_PROBABILITY) {
+                    return; // The wanted word showed up in the suggestions.
+                }
+            }
+        }
+    }
+
+    /// Cycles through a recorded query log, each typist starting at its own offset.
+    static class Replay implements Supplier<String> {
+        private final List<String> queries;
+        private int position;
+
+        Replay(List<String> queries, int start) {
+            if (queries.isEmpty()) {
+                throw new IllegalArgumentException("The query log is empty");
+            }
+            this.queries = queries;
+            this.position = start;
+        }
+
+        @Override
+        public String get() {
+            String query = queries.get(position).trim();
+            position = (position + 1) % queries.size();
+            return query;
+        }
+    }
+
+    /// Cumulative Zipf distribution over ranks 1..n: P(rank k) is proportional to 1 / k^exponent.
+    static double[] zipfCumulative(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+        return cumulative;
+    }
+
+    /// Maps a uniform number in [0, 1) to a 0-based rank.
+    static int sampleRank(double[] cumulative, double uniform) {
+        int index = Arrays.binarySearch(cumulative, uniform);
+        return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    private static void think(Random random, double meanMillis) {
+        if (meanMillis <= 0) {
+            return;
+        }
+        long pause = (long) (-Math.log(1 - random.nextDouble()) * meanMillis * 1_000_000);
+        try {
+            Thread.sleep(pause / 1_000_000, (int) (pause % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+            counter.setThreadAllocatedMemoryEnabled(true);
+            return counter;
+        }
+        return null;
+    }
+
+    private static long threadAllocatedBytes() {
+        return allocationCounter().getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
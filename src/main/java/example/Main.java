@@ -4,6 +4,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ObjIntConsumer;
 
 import com.opencsv.CSVReader;
 import com.opencsv.exceptions.CsvException;
@@ -11,6 +12,8 @@ import com.opencsv.exceptions.CsvException;
 public class Main {
     private Trie trie;
     private TernarySearchTree tst;
+    private MeteredIndex meteredTrie; // Timing wrappers, published over JMX.
+    private MeteredIndex meteredTST;
     // public static String beforeInitMemory;
     // public static long trieLoadTime;
     // public static long tstLoadTime;
@@ -97,6 +100,8 @@ public class Main {
         // long beforeTSTMemory = runtime.totalMemory() - runtime.freeMemory();
 
         this.tst = new TernarySearchTree();
+        this.meteredTrie = new MeteredIndex("Trie", trie);
+        this.meteredTST = new MeteredIndex("TST", tst);
         // long startTimeTST = System.nanoTime();
         // long endTimeTST = System.nanoTime();
 
@@ -133,36 +138,65 @@ public class Main {
         return String.format("%.2f %s", bytes / Math.pow(1024, exp), pre);
     }
 
-    public void loadTrieDictionary(String dictionaryFile) throws IOException, CsvException {
-        int wordCount = 0;
-        try (CSVReader reader = new CSVReader(new FileReader(dictionaryFile))) {
-            List<String[]> rows = reader.readAll();
+    /// Used heap for memory measurements: the smallest reading over several full collections. One is not enough:
+    /// the serial collector leaves up to 5% of dead objects in place rather than compact them away, and only compacts
+    /// completely every fourth full collection; memory held through cleaners (direct buffers) also needs a collection
+    /// after the cleaner ran. Shared by the benchmarks so their memory figures compare.
+    public static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+            Thread.sleep(20); // Gives the cleaner thread a chance to run.
+        }
+        return used;
+    }
 
-            for (int i = 2; i < rows.size(); i++) { // Skip the header row (word/count)
-                String[] columns = rows.get(i);
-                if (columns.length < 2) {
-                    continue; // Skip malformed rows
-                }
+    public void loadTrieDictionary(String dictionaryFile) throws IOException, CsvException {
+        int wordCount = meteredTrie.loadDictionary(dictionaryFile);
+        System.out.println("Loaded " + wordCount + " words into Trie");
+    }
 
-                String word = columns[0].trim().toLowerCase();
-                int count = Integer.parseInt(columns[1].trim());
+    public void loadTSTDictionary(String dictionaryFile) throws IOException, CsvException {
+        int wordCount = meteredTST.loadDictionary(dictionaryFile);
+        System.out.println("Loaded " + wordCount + " words into TST");
+    }
 
-                if (!word.isEmpty()) {
-                    // Insert each word and their frequency into Trie
-                    trie.insert(word, count);
-                    wordCount++;
-                }
-            }
+    /// Creates an empty engine by name, for the benchmarks and tools that take the engine as an argument.
+    public static AutocompleteIndex createIndex(String engine) {
+        switch (engine) {
+            case "trie":
+                return new Trie();
+            case "tst":
+                return new TernarySearchTree();
+            case "offheap":
+                return new OffHeapTernarySearchTree();
+            case "hybrid":
+                return new HybridIndex();
+            case "packed":
+                return new PackedTrie();
+            case "infix":
+                return new SuffixArrayIndex(); // Matches anywhere in a word, not just at the start.
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + engine);
         }
-        System.out.println("Loaded " + wordCount + " words into Trie");
     }
 
-    public void loadTSTDictionary(String dictionaryFile) throws IOException, CsvException {
+    /// Reads the word/count CSV and inserts every word into the given index.
+    /// Returns the number of words inserted.
+    public static int loadDictionary(String dictionaryFile, AutocompleteIndex index) throws IOException, CsvException {
+        return loadDictionary(dictionaryFile, index::insert);
+    }
+
+    /// Reads the word/count CSV and hands every word and its count to `sink`.
+    /// Returns the number of words read.
+    public static int loadDictionary(String dictionaryFile, ObjIntConsumer<String> sink) throws IOException, CsvException {
         int wordCount = 0;
         try (CSVReader reader = new CSVReader(new FileReader(dictionaryFile))) {
             List<String[]> rows = reader.readAll();
 
-            for (int i = 2; i < rows.size(); i++) { // Skip the header row (word/count)
+            for (int i = 1; i < rows.size(); i++) { // Skip the header row (word/count)
                 String[] columns = rows.get(i);
                 if (columns.length < 2) {
                     continue; // Skip malformed rows
@@ -172,13 +206,13 @@ public class Main {
                 int count = Integer.parseInt(columns[1].trim());
 
                 if (!word.isEmpty()) {
-                    // Insert each word and their frequency into TST
-                    tst.insert(word, count);
+                    // Pass each word and their frequency on
+                    sink.accept(word, count);
                     wordCount++;
                 }
             }
         }
-        System.out.println("Loaded " + wordCount + " words into TST");
+        return wordCount;
     }
 
     public List<List<String>> suggestWithTrie(String prefix, int limit) {
@@ -190,7 +224,7 @@ public class Main {
         long startMemory = runtime.totalMemory() - runtime.freeMemory();
         long startTime = System.nanoTime();
 
-        List<String> suggestions = trie.getSuggestions(prefix.toLowerCase(), limit);
+        List<String> suggestions = meteredTrie.getSuggestions(prefix.toLowerCase(), limit);
 
         long endTime = System.nanoTime();
         System.gc();
@@ -218,7 +252,7 @@ public class Main {
         long startMemory = runtime.totalMemory() - runtime.freeMemory();
         long startTime = System.nanoTime();
 
-        List<String> suggestions = tst.getSuggestions(prefix.toLowerCase(), limit);
+        List<String> suggestions = meteredTST.getSuggestions(prefix.toLowerCase(), limit);
 
         long endTime = System.nanoTime();
         System.gc();
@@ -0,0 +1,116 @@
+package example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.opencsv.exceptions.CsvException;
+
+/// Wraps an index, times every `getSuggestions` call into `EngineMetrics`, and publishes those metrics as an MBean
+/// named `example:type=AutocompleteEngine,name=<name>` so they can be read with jconsole, VisualVM or jcmd while
+/// the process is under load. A newer index registered under the same name takes the MBean over; closing an index
+/// unregisters the MBean only while it is still this index's.
+public class MeteredIndex implements AutocompleteIndex, Closeable {
+    // Which index currently owns each registered name. Guards registering and unregistering as well.
+    private static final Map<ObjectName, MeteredIndex> OWNERS = new HashMap<>();
+
+    private final AutocompleteIndex index;
+    private final EngineMetrics metrics = new EngineMetrics();
+    private final ObjectName objectName;
+
+    public MeteredIndex(String name, AutocompleteIndex index) {
+        this.index = index;
+        index.setQueryProbe(metrics);
+        try {
+            objectName = new ObjectName("example:type=AutocompleteEngine,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            synchronized (OWNERS) {
+                try {
+                    server.registerMBean(metrics, objectName);
+                } catch (InstanceAlreadyExistsException e) {
+                    // A newer engine under the same name replaces the old one.
+                    server.unregisterMBean(objectName);
+                    server.registerMBean(metrics, objectName);
+                }
+                OWNERS.put(objectName, this);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register metrics for " + name, e);
+        }
+    }
+
+    /// Loads the CSV dictionary into the wrapped index and records how long it took.
+    public int loadDictionary(String dictionaryFile) throws IOException, CsvException {
+        long startTime = System.nanoTime();
+        int wordCount = Main.loadDictionary(dictionaryFile, index);
+        metrics.recordBuild(System.nanoTime() - startTime, wordCount);
+        return wordCount;
+    }
+
+    public EngineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public AutocompleteIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public void insert(String word, int frequency) {
+        index.insert(word, frequency);
+    }
+
+    @Override
+    public boolean delete(String word) {
+        return index.delete(word);
+    }
+
+    @Override
+    public List<String> getSuggestions(String prefix, int limit) {
+        long startTime = System.nanoTime();
+        List<String> suggestions = index.getSuggestions(prefix, limit);
+        metrics.recordLatency(System.nanoTime() - startTime);
+        return suggestions;
+    }
+
+    @Override
+    public int getFrequency(String word) {
+        return index.getFrequency(word);
+    }
+
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        index.forEachWord(action);
+    }
+
+    @Override
+    public void setQueryProbe(QueryProbe probe) {
+        // The wrapped index reports to this wrapper's metrics.
+    }
+
+    @Override
+    public void close() {
+        index.setQueryProbe(null);
+        synchronized (OWNERS) {
+            if (!OWNERS.remove(objectName, this)) {
+                return; // A newer engine of the same name owns the MBean now.
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (InstanceNotFoundException e) {
+                // Unregistered from outside this class.
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not unregister " + objectName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/// Memory and per-tenant query latency of one shared `MultiDictionaryIndex` against separate instances: memory is
+/// compared with one `TernarySearchTree` per dictionary and with one single-dictionary index per dictionary; latency
+/// with the latter, which runs the same pruned top-K walk over a tree of only its own words.
+///
+/// The tenants are derived from the CSV (inflated by appending letter suffixes): each keeps about 70% of the shared
+/// vocabulary with its own counts (the original count scaled by 0.5 to 1.5) and adds 10% words of its own.
+///
+/// Usage: MultiDictionaryBenchmark [tenants] [copies] [queries]
+public class MultiDictionaryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int tenants = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+
+        List<String> vocabulary = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> {
+            for (int copy = 0; copy < copies; copy++) {
+                vocabulary.add(word + OffHeapGcBenchmark.suffix(copy));
+                counts.add(frequency);
+            }
+        });
+
+        // Tenant dictionaries as parallel word/frequency lists.
+        List<List<String>> tenantWords = new ArrayList<>();
+        List<List<Integer>> tenantCounts = new ArrayList<>();
+        long entries = 0;
+        for (int tenant = 0; tenant < tenants; tenant++) {
+            Random random = new Random(100 + tenant);
+            List<String> words = new ArrayList<>();
+            List<Integer> frequencies = new ArrayList<>();
+            for (int i = 0; i < vocabulary.size(); i++) {
+                double roll = random.nextDouble();
+                if (roll < 0.7) {
+                    words.add(vocabulary.get(i));
+                    frequencies.add((int) (counts.get(i) * (0.5 + random.nextDouble())));
+                } else if (roll < 0.8) {
+                    words.add(vocabulary.get(i) + "-" + tenant); // Only this tenant has it.
+                    frequencies.add(counts.get(i));
+                }
+            }
+            tenantWords.add(words);
+            tenantCounts.add(frequencies);
+            entries += words.size();
+        }
+        System.out.println("Tenants: " + tenants + ", shared vocabulary: " + vocabulary.size()
+                + ", dictionary entries in total: " + entries);
+
+        long heapBefore = Main.usedHeap();
+        TernarySearchTree[] separateTrees = new TernarySearchTree[tenants];
+        for (int tenant = 0; tenant < tenants; tenant++) {
+            separateTrees[tenant] = new TernarySearchTree();
+            load(separateTrees[tenant], tenantWords.get(tenant), tenantCounts.get(tenant));
+        }
+        long separateTreeMemory = Main.usedHeap() - heapBefore;
+        System.out.println(String.format("%d separate TSTs:                       %s", tenants,
+                Main.formatMemorySize(separateTreeMemory)));
+        separateTrees = null; // Only needed for the memory figure.
+
+        // Same node layout and top-K walk as the shared index, one dictionary each: the latency baseline.
+        heapBefore = Main.usedHeap();
+        AutocompleteIndex[] separate = new AutocompleteIndex[tenants];
+        for (int tenant = 0; tenant < tenants; tenant++) {
+            separate[tenant] = new MultiDictionaryIndex().view("tenant-" + tenant);
+            load(separate[tenant], tenantWords.get(tenant), tenantCounts.get(tenant));
+        }
+        long separateMemory = Main.usedHeap() - heapBefore;
+        System.out.println(String.format("%d separate single-dictionary indexes:  %s", tenants,
+                Main.formatMemorySize(separateMemory)));
+
+        heapBefore = Main.usedHeap();
+        MultiDictionaryIndex shared = new MultiDictionaryIndex();
+        for (int tenant = 0; tenant < tenants; tenant++) {
+            load(shared.view("tenant-" + tenant), tenantWords.get(tenant), tenantCounts.get(tenant));
+        }
+        long sharedMemory = Main.usedHeap() - heapBefore;
+        long[] statistics = shared.getNodeStatistics();
+        System.out.println(String.format("Shared index:                           %s (%d nodes, %d terminals holding %d entries)",
+                Main.formatMemorySize(sharedMemory), statistics[0], statistics[1], statistics[2]));
+
+        Random random = new Random(31);
+        String[] prefixes = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            String word = vocabulary.get(random.nextInt(vocabulary.size()));
+            prefixes[i] = word.substring(0, Math.min(word.length(), 1 + random.nextInt(3)));
+        }
+
+        System.out.println(String.format("%-10s %24s %24s", "tenant", "separate p50/p99 us", "shared p50/p99 us"));
+        for (int tenant = 0; tenant < tenants; tenant++) {
+            AutocompleteIndex view = shared.view("tenant-" + tenant);
+            LatencyHistogram separateLatency = measure(separate[tenant], prefixes);
+            LatencyHistogram sharedLatency = measure(view, prefixes);
+            System.out.println(String.format("%-10s %24s %24s", "tenant-" + tenant,
+                    separateLatency.getValueAtPercentile(50) / 1000 + " / " + separateLatency.getValueAtPercentile(99) / 1000,
+                    sharedLatency.getValueAtPercentile(50) / 1000 + " / " + sharedLatency.getValueAtPercentile(99) / 1000));
+        }
+        if (tenants > 1) {
+            LatencyHistogram pairLatency = measure(shared.view("tenant-0", "tenant-1"), prefixes);
+            System.out.println(String.format("%-10s %24s %24s", "0+1", "-",
+                    pairLatency.getValueAtPercentile(50) / 1000 + " / " + pairLatency.getValueAtPercentile(99) / 1000));
+        }
+    }
+
+    private static void load(AutocompleteIndex index, List<String> words, List<Integer> frequencies) {
+        for (int i = 0; i < words.size(); i++) {
+            index.insert(words.get(i), frequencies.get(i));
+        }
+    }
+
+    private static LatencyHistogram measure(AutocompleteIndex index, String[] prefixes) {
+        for (String prefix : prefixes) {
+            index.getSuggestions(prefix, 10); // Warm-up.
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        for (String prefix : prefixes) {
+            long startTime = System.nanoTime();
+            index.getSuggestions(prefix, 10);
+            latency.record(System.nanoTime() - startTime);
+        }
+        return latency;
+    }
+}
@@ -0,0 +1,411 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjIntConsumer;
+
+/// One ternary search tree shared by up to 64 dictionaries (locales, customer vocabularies, ...), so a word that
+/// several dictionaries contain is stored once.
+///
+/// A terminal node carries a bitmask of the dictionaries that contain its word and a packed array with one frequency
+/// per set bit, in bit order. Every node also carries the mask of dictionaries with any word in its ternary subtree,
+/// so a query skips branches that none of its dictionaries use, and the highest frequency any dictionary gives a word
+/// of that subtree. Queries name a set of dictionaries and rank words by the sum of their frequencies in those
+/// dictionaries; like `TernarySearchTree`, they skip subtrees whose bound (see `Node.maxFrequencyIn`) cannot beat the
+/// weakest of a full top-K.
+///
+/// Dictionary ids are 0 to 63; the id-taking methods throw IllegalArgumentException for anything else.
+///
+/// `view(...)` wraps a dictionary set as an `AutocompleteIndex`, so every existing tool can work on one tenant.
+public class MultiDictionaryIndex {
+    public static final int MAX_DICTIONARIES = Long.SIZE;
+    private static final int[] NO_FREQUENCIES = new int[0];
+
+    private final Map<String, Integer> dictionaryIds = new ConcurrentHashMap<>(); // Read without the lock.
+    private final List<String> dictionaryNames = new ArrayList<>();
+    private Node root;
+    private volatile QueryProbe probe; // Optional metrics hook, see setQueryProbe.
+
+    /// Id of a dictionary, registering it on first use. Registering takes one of the 64 ids for good, so only the
+    /// write paths call this; lookups use `dictionarySet`.
+    public synchronized int dictionaryId(String name) {
+        Integer id = dictionaryIds.get(name);
+        if (id == null) {
+            if (dictionaryNames.size() == MAX_DICTIONARIES) {
+                throw new IllegalStateException("At most " + MAX_DICTIONARIES + " dictionaries are supported");
+            }
+            id = dictionaryNames.size();
+            dictionaryIds.put(name, id);
+            dictionaryNames.add(name);
+        }
+        return id;
+    }
+
+    /// Bitmask naming the given dictionaries. Names nothing was ever inserted into are left out (they match nothing)
+    /// rather than registered.
+    public long dictionarySet(String... names) {
+        long set = 0;
+        for (String name : names) {
+            Integer id = dictionaryIds.get(name);
+            if (id != null) {
+                set |= 1L << id;
+            }
+        }
+        return set;
+    }
+
+    public List<String> getDictionaryNames() {
+        return Collections.unmodifiableList(dictionaryNames);
+    }
+
+    /// Inserts a word into one dictionary. Inserting an existing word overwrites its frequency in that dictionary.
+    public void insert(int dictionary, String word, int frequency) {
+        long bit = dictionaryBit(dictionary);
+        if (word.isEmpty()) return; // Skips over empty words, like the other engines.
+        root = insert(root, word, 0, bit, frequency);
+    }
+
+    /// The mask bit of a dictionary id. Checked, since a shift would silently wrap 64 around to 0.
+    private static long dictionaryBit(int dictionary) {
+        if (dictionary < 0 || dictionary >= MAX_DICTIONARIES) {
+            throw new IllegalArgumentException("Dictionary ids go from 0 to " + (MAX_DICTIONARIES - 1) + ", not " + dictionary);
+        }
+        return 1L << dictionary;
+    }
+
+    /// Recursive helper for insertion.
+    private Node insert(Node node, String word, int index, long bit, int frequency) {
+        char c = word.charAt(index);
+        if (node == null) {
+            node = new Node(c);
+        }
+
+        if (c < node.data) {
+            node.left = insert(node.left, word, index, bit, frequency);
+        } else if (c > node.data) {
+            node.right = insert(node.right, word, index, bit, frequency);
+        } else if (index < word.length() - 1) {
+            node.middle = insert(node.middle, word, index + 1, bit, frequency);
+        } else {
+            node.setFrequency(bit, frequency);
+        }
+        node.updateSubtree(); // Also when overwriting: the word's frequency may have gone down.
+        return node;
+    }
+
+    /// Removes a word from one dictionary. Nodes no dictionary needs any more are unlinked.
+    public boolean delete(int dictionary, String word) {
+        long bit = dictionaryBit(dictionary);
+        if (word.isEmpty()) return false;
+        boolean[] found = new boolean[1];
+        root = delete(root, word, 0, bit, found);
+        return found[0];
+    }
+
+    /// Recursive helper for deletion. Returns the (possibly replaced) subtree root.
+    private Node delete(Node node, String word, int index, long bit, boolean[] found) {
+        if (node == null) {
+            return null;
+        }
+
+        char c = word.charAt(index);
+        if (c < node.data) {
+            node.left = delete(node.left, word, index, bit, found);
+        } else if (c > node.data) {
+            node.right = delete(node.right, word, index, bit, found);
+        } else if (index < word.length() - 1) {
+            node.middle = delete(node.middle, word, index + 1, bit, found);
+        } else if ((node.wordMask & bit) != 0) {
+            node.removeFrequency(bit);
+            found[0] = true;
+        }
+
+        if (node.wordMask == 0 && node.middle == null) {
+            return removeNode(node); // No dictionary has a word here or below along the middle branch.
+        }
+        node.updateSubtree();
+        return node;
+    }
+
+    /// Unlinks `node` from its binary search tree level and returns what takes its place.
+    private Node removeNode(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // Two neighbours: the smallest letter of the right side takes the node's place (with its own middle branch).
+        Node parent = node;
+        Node successor = node.right;
+        while (successor.left != null) {
+            parent = successor;
+            successor = successor.left;
+        }
+        if (parent != node) {
+            parent.left = successor.right;
+            successor.right = node.right;
+            updateLeftSpine(successor.right, parent);
+        }
+        successor.left = node.left;
+        successor.updateSubtree();
+        return successor;
+    }
+
+    /// Refreshes the masks and maxima from `top` down the left links to `bottom`, bottom-up.
+    private void updateLeftSpine(Node top, Node bottom) {
+        if (top != bottom) {
+            updateLeftSpine(top.left, bottom);
+        }
+        top.updateSubtree();
+    }
+
+    /// Up to `limit` words starting with `prefix` that are in any dictionary of `dictionaries` (a mask from
+    /// `dictionarySet`), ranked by their summed frequency in those dictionaries, ties alphabetically.
+    public List<String> getSuggestions(long dictionaries, String prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        TopK best = new TopK(limit);
+        int[] counters = new int[2]; // Nodes visited and candidates considered, reported to the probe.
+
+        if (prefix.isEmpty()) {
+            collect(root, new StringBuilder(), dictionaries, best, counters);
+        } else {
+            Node lastNode = searchPrefix(prefix, counters);
+            if (lastNode != null) {
+                if ((lastNode.wordMask & dictionaries) != 0) {
+                    counters[1]++;
+                    best.offer(prefix, lastNode.frequencyIn(dictionaries));
+                }
+                collect(lastNode.middle, new StringBuilder(prefix), dictionaries, best, counters);
+            }
+        }
+
+        List<String> suggestions = best.drainWords();
+
+        QueryProbe probe = this.probe;
+        if (probe != null) {
+            probe.queryFinished(counters[0], counters[1], suggestions.size());
+        }
+        return suggestions;
+    }
+
+    /// Summed frequency of `word` in `dictionaries`, or 0 if none of them contains it.
+    public int getFrequency(long dictionaries, String word) {
+        Node node = word.isEmpty() ? null : searchPrefix(word, null);
+        return node == null ? 0 : node.frequencyIn(dictionaries);
+    }
+
+    /// Hands every word in any of `dictionaries` and its summed frequency to `action`.
+    public void forEachWord(long dictionaries, ObjIntConsumer<String> action) {
+        forEachWord(root, new StringBuilder(), dictionaries, action);
+    }
+
+    private void forEachWord(Node node, StringBuilder prefix, long dictionaries, ObjIntConsumer<String> action) {
+        if (node == null || (node.subtreeMask & dictionaries) == 0) {
+            return;
+        }
+        forEachWord(node.left, prefix, dictionaries, action);
+        prefix.append(node.data);
+        if ((node.wordMask & dictionaries) != 0) {
+            action.accept(prefix.toString(), node.frequencyIn(dictionaries));
+        }
+        forEachWord(node.middle, prefix, dictionaries, action);
+        prefix.setLength(prefix.length() - 1);
+        forEachWord(node.right, prefix, dictionaries, action);
+    }
+
+    public void setQueryProbe(QueryProbe probe) {
+        this.probe = probe;
+    }
+
+    /// The dictionaries with the given names as an `AutocompleteIndex`. Queries search all of them; insert and
+    /// delete are only supported when the view names a single dictionary. Creating a view registers nothing: names
+    /// are looked up on every call, so a view matches nothing for a dictionary until a word is inserted into it.
+    public AutocompleteIndex view(String... names) {
+        String[] viewed = names.clone();
+        return new AutocompleteIndex() {
+            @Override
+            public void insert(String word, int frequency) {
+                MultiDictionaryIndex.this.insert(dictionaryId(writableName()), word, frequency);
+            }
+
+            @Override
+            public boolean delete(String word) {
+                Integer id = dictionaryIds.get(writableName());
+                return id != null && MultiDictionaryIndex.this.delete(id, word);
+            }
+
+            @Override
+            public List<String> getSuggestions(String prefix, int limit) {
+                return MultiDictionaryIndex.this.getSuggestions(dictionarySet(viewed), prefix, limit);
+            }
+
+            @Override
+            public int getFrequency(String word) {
+                return MultiDictionaryIndex.this.getFrequency(dictionarySet(viewed), word);
+            }
+
+            @Override
+            public void forEachWord(ObjIntConsumer<String> action) {
+                MultiDictionaryIndex.this.forEachWord(dictionarySet(viewed), action);
+            }
+
+            private String writableName() {
+                if (viewed.length != 1) {
+                    throw new UnsupportedOperationException("Only a view of a single dictionary can be modified, this one has "
+                            + Arrays.toString(viewed));
+                }
+                return viewed[0];
+            }
+        };
+    }
+
+    /// Counts nodes, and terminals with the number of dictionaries sharing them, for memory reports.
+    /// Returns {nodes, terminals, dictionary entries}.
+    public long[] getNodeStatistics() {
+        long[] statistics = new long[3];
+        countNodes(root, statistics);
+        return statistics;
+    }
+
+    private void countNodes(Node node, long[] statistics) {
+        if (node == null) {
+            return;
+        }
+        statistics[0]++;
+        if (node.wordMask != 0) {
+            statistics[1]++;
+            statistics[2] += Long.bitCount(node.wordMask);
+        }
+        countNodes(node.left, statistics);
+        countNodes(node.middle, statistics);
+        countNodes(node.right, statistics);
+    }
+
+    /// Searches for the node of the last letter of `prefix`, regardless of dictionaries.
+    private Node searchPrefix(String prefix, int[] counters) {
+        Node node = root;
+        int index = 0;
+        while (node != null) {
+            if (counters != null) {
+                counters[0]++;
+            }
+            char c = prefix.charAt(index);
+            if (c < node.data) {
+                node = node.left;
+            } else if (c > node.data) {
+                node = node.right;
+            } else if (index == prefix.length() - 1) {
+                return node;
+            } else {
+                index++;
+                node = node.middle;
+            }
+        }
+        return null;
+    }
+
+    /// Offers every word below `node` that is in `dictionaries`, skipping subtrees none of them uses and subtrees
+    /// whose bound cannot beat the weakest of a full heap.
+    private void collect(Node node, StringBuilder path, long dictionaries, TopK best, int[] counters) {
+        if (node == null || (node.subtreeMask & dictionaries) == 0 || !best.accepts(node.maxFrequencyIn(dictionaries))) {
+            return;
+        }
+        counters[0]++;
+        collect(node.left, path, dictionaries, best, counters);
+        path.append(node.data);
+        if ((node.wordMask & dictionaries) != 0) {
+            counters[1]++;
+            best.offer(path, node.frequencyIn(dictionaries));
+        }
+        collect(node.middle, path, dictionaries, best, counters);
+        path.setLength(path.length() - 1);
+        collect(node.right, path, dictionaries, best, counters);
+    }
+
+    /// TST node shared by all dictionaries.
+    static class Node {
+        final char data;
+        Node left, middle, right;
+        long wordMask; // Dictionaries in which the path to this node is a word.
+        long subtreeMask; // Dictionaries with a word anywhere in this node's ternary subtree.
+        int maxFrequency = Integer.MIN_VALUE; // Highest frequency of a word of the subtree in any one dictionary.
+        int[] frequencies = NO_FREQUENCIES; // One per bit of wordMask, lowest bit first.
+
+        Node(char data) {
+            this.data = data;
+        }
+
+        /// Sets the frequency for the dictionary `bit`, growing the packed array if it is new here.
+        void setFrequency(long bit, int frequency) {
+            int slot = Long.bitCount(wordMask & (bit - 1));
+            if ((wordMask & bit) == 0) {
+                int[] grown = new int[frequencies.length + 1];
+                System.arraycopy(frequencies, 0, grown, 0, slot);
+                System.arraycopy(frequencies, slot, grown, slot + 1, frequencies.length - slot);
+                frequencies = grown;
+                wordMask |= bit;
+            }
+            frequencies[slot] = frequency;
+        }
+
+        void removeFrequency(long bit) {
+            int slot = Long.bitCount(wordMask & (bit - 1));
+            int[] shrunk = frequencies.length == 1 ? NO_FREQUENCIES : new int[frequencies.length - 1];
+            System.arraycopy(frequencies, 0, shrunk, 0, slot);
+            System.arraycopy(frequencies, slot + 1, shrunk, slot, frequencies.length - slot - 1);
+            frequencies = shrunk;
+            wordMask &= ~bit;
+        }
+
+        /// Sum of the frequencies in the given dictionaries, saturating at Integer.MAX_VALUE.
+        int frequencyIn(long dictionaries) {
+            long wanted = wordMask & dictionaries;
+            if (wanted == wordMask && frequencies.length == 1) {
+                return frequencies[0]; // The common case: one dictionary owns the word.
+            }
+            long sum = 0;
+            while (wanted != 0) {
+                long bit = Long.lowestOneBit(wanted);
+                sum += frequencies[Long.bitCount(wordMask & (bit - 1))];
+                wanted &= ~bit;
+            }
+            return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, sum));
+        }
+
+        /// Upper bound of `frequencyIn(dictionaries)` for every word in this subtree: a word is in at most as many
+        /// of them as the subtree uses, each adding at most `maxFrequency`. One int per node instead of a maximum
+        /// per dictionary keeps the node small; for a single dictionary the bound is that dictionary's maximum
+        /// unless another dictionary has a stronger word in the subtree.
+        int maxFrequencyIn(long dictionaries) {
+            if (maxFrequency <= 0) {
+                return maxFrequency; // Adding more counts that are not positive only lowers a sum.
+            }
+            return (int) Math.min(Integer.MAX_VALUE, (long) Long.bitCount(subtreeMask & dictionaries) * maxFrequency);
+        }
+
+        /// Recomputes the subtree mask and maximum from this node's own word and its three children.
+        void updateSubtree() {
+            long mask = wordMask;
+            int max = Integer.MIN_VALUE;
+            for (int frequency : frequencies) {
+                max = Math.max(max, frequency);
+            }
+            for (Node child : new Node[]{left, middle, right}) {
+                if (child != null) {
+                    mask |= child.subtreeMask;
+                    max = Math.max(max, child.maxFrequency);
+                }
+            }
+            subtreeMask = mask;
+            maxFrequency = max;
+        }
+    }
+}
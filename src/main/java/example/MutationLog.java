@@ -0,0 +1,488 @@
+package example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/// Append-only, checksummed log of dictionary mutations, split into numbered segment files (`wal-<n>.log`).
+///
+/// Appends are group committed: callers only enqueue their record, and a single writer thread writes everything
+/// queued since its last round with one write and one fsync. `awaitDurable` blocks until a record is on disk.
+///
+/// Record layout: `int payloadLength, int crc32(payload), payload`, where the payload is
+/// `byte operation, int value, UTF-8 word bytes`. A torn or corrupt record at the end of the newest segment
+/// (a crash in the middle of a write) is cut off during replay.
+public class MutationLog implements Closeable {
+    public static final byte OP_INSERT = 1;
+    public static final byte OP_DELETE = 2;
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_PAYLOAD_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final Thread writer;
+
+    // Everything below is guarded by `lock`.
+    private final Object lock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private long appendedSequence = 0; // Sequence number of the newest enqueued record.
+    private long durableSequence = 0;  // Every record up to this number is on disk.
+    private long batches = 0;
+    private long segment;
+    private FileChannel channel;
+    private IOException failure;
+    private boolean closed;
+
+    /// Opens a log in `directory`, appending to a fresh segment numbered after every existing one.
+    /// With `fsync` off, batches are written but not forced to disk (faster, not crash safe).
+    public MutationLog(Path directory, boolean fsync) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        List<Long> existing = listSegments(directory);
+        segment = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        channel = openSegment(segment);
+
+        writer = new Thread(this::writeLoop, "mutation-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /// Throws IllegalArgumentException if `word` is too long for a record, so callers can check before they act.
+    public static void checkWord(String word) {
+        encode(word);
+    }
+
+    private static byte[] encode(String word) {
+        byte[] wordBytes = word.getBytes(StandardCharsets.UTF_8);
+        if (1 + 4 + wordBytes.length > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("Word too long for the mutation log: " + wordBytes.length + " bytes");
+        }
+        return wordBytes;
+    }
+
+    /// Enqueues a record and returns its sequence number, without waiting for the disk.
+    public long append(byte operation, String word, int value) throws IOException {
+        byte[] wordBytes = encode(word);
+        int payloadLength = 1 + 4 + wordBytes.length;
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payloadLength);
+        record.putInt(payloadLength);
+        record.putInt(0); // Checksum, filled in below.
+        record.put(operation);
+        record.putInt(value);
+        record.put(wordBytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+
+        synchronized (lock) {
+            checkUsable();
+            pending.write(record.array(), 0, record.capacity());
+            appendedSequence++;
+            lock.notifyAll();
+            return appendedSequence;
+        }
+    }
+
+    /// Blocks until the record with the given sequence number (and everything before it) is durable.
+    public void awaitDurable(long sequence) throws IOException {
+        synchronized (lock) {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new IOException("Mutation log write failed", failure);
+                }
+                if (closed) {
+                    throw new IOException("Mutation log is closed");
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the mutation log", e);
+                }
+            }
+        }
+    }
+
+    /// Waits until everything enqueued so far is durable, then starts a new segment.
+    /// Returns the new segment's number: every record appended before this call lives in an older segment.
+    /// The caller must not append concurrently if it relies on that split (the index holds its write lock).
+    public long rollSegment() throws IOException {
+        synchronized (lock) {
+            awaitDurable(appendedSequence);
+            // Nothing is pending and durable == appended, so the writer is idle and the channel can be swapped.
+            channel.close();
+            segment++;
+            channel = openSegment(segment);
+            return segment;
+        }
+    }
+
+    /// Deletes every segment numbered below `segment`, once a snapshot covers them.
+    public void deleteSegmentsBefore(long segment) throws IOException {
+        for (long existing : listSegments(directory)) {
+            if (existing < segment) {
+                Files.deleteIfExists(segmentPath(directory, existing));
+            }
+        }
+    }
+
+    /// Number of write+fsync rounds so far; appended records divided by this is the average group size.
+    public long getBatchCount() {
+        synchronized (lock) {
+            return batches;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (failure == null) {
+                awaitDurable(appendedSequence);
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            ByteArrayOutputStream batch;
+            long batchSequence;
+            FileChannel target;
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return; // Closed and fully flushed.
+                }
+                // Swap buffers so appenders keep filling the other one while this batch is written.
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                batchSequence = appendedSequence;
+                target = channel;
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                if (fsync) {
+                    target.force(false);
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                batch.reset();
+                durableSequence = batchSequence;
+                batches++;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void checkUsable() throws IOException {
+        if (failure != null) {
+            throw new IOException("Mutation log write failed", failure);
+        }
+        if (closed) {
+            throw new IOException("Mutation log is closed");
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /// Replays every record of the segments numbered `fromSegment` and above, oldest first.
+    /// A damaged tail of the newest segment is truncated; damage anywhere else is reported as an error.
+    /// Returns the number of records replayed.
+    public static long replay(Path directory, long fromSegment, MutationVisitor visitor) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        for (long segment : listSegments(directory)) {
+            if (segment >= fromSegment) {
+                segments.add(segment);
+            }
+        }
+
+        long records = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segmentPath(directory, segments.get(i));
+            boolean newest = i == segments.size() - 1;
+            records += replaySegment(path, newest, visitor);
+        }
+        return records;
+    }
+
+    private static long replaySegment(Path path, boolean newest, MutationVisitor visitor) throws IOException {
+        long records = 0;
+        long validBytes = 0;
+        boolean tornTail = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int payloadLength;
+                try {
+                    payloadLength = in.readInt();
+                } catch (EOFException e) {
+                    break; // Clean end of segment.
+                }
+
+                byte[] payload;
+                int checksum;
+                try {
+                    if (payloadLength < 5 || payloadLength > MAX_PAYLOAD_BYTES) {
+                        throw new IOException("Bad record length " + payloadLength);
+                    }
+                    checksum = in.readInt();
+                    payload = new byte[payloadLength];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        throw new IOException("Checksum mismatch");
+                    }
+                } catch (IOException e) {
+                    if (!newest) {
+                        throw new IOException("Corrupt record in " + path + " at byte " + validBytes, e);
+                    }
+                    tornTail = true;
+                    break;
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                byte operation = buffer.get();
+                int value = buffer.getInt();
+                String word = new String(payload, 5, payloadLength - 5, StandardCharsets.UTF_8);
+                visitor.visit(operation, word, value);
+                records++;
+                validBytes += HEADER_BYTES + payloadLength;
+            }
+        }
+        if (tornTail) {
+            // A crash cut the last write short: drop the partial record so new appends start clean.
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validBytes);
+            }
+        }
+        return records;
+    }
+
+    /// Receives replayed records.
+    public interface MutationVisitor {
+        void visit(byte operation, String word, int value);
+    }
+
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(Long.parseLong(
+                                name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // Not one of ours.
+                    }
+                }
+            });
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    /// Writes a snapshot file: `long coveredSegment, int wordCount`, then `int byteLength, UTF-8 word bytes,
+    /// int frequency` for every word (any length the log accepts), then a CRC32 of everything before it. The file is written under a temporary name, forced, then renamed into place,
+    /// so a snapshot file either exists completely or not at all.
+    static Path writeSnapshot(Path directory, long segment, List<String> words, int[] frequencies) throws IOException {
+        Path temporary = directory.resolve("snapshot-" + segment + ".tmp");
+        Path target = directory.resolve("snapshot-" + segment + ".dat");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     new CheckedOutputStream(Channels.newOutputStream(channel), crc)))) {
+            out.writeLong(segment);
+            out.writeInt(words.size());
+            for (int i = 0; i < words.size(); i++) {
+                byte[] word = words.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(word.length);
+                out.write(word);
+                out.writeInt(frequencies[i]);
+            }
+            out.flush();
+            // The checksum itself must stay out of the CRC, so it bypasses the checked stream.
+            ByteBuffer checksum = ByteBuffer.allocate(8).putLong(crc.getValue());
+            checksum.flip();
+            while (checksum.hasRemaining()) {
+                channel.write(checksum);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true); // Makes the rename itself durable.
+        } catch (IOException e) {
+            // Not every platform can fsync a directory.
+        }
+        return target;
+    }
+
+    /// Loads the newest usable snapshot into `action` and returns the first log segment it does not cover, or 0 if
+    /// there is no snapshot. Leftover temporary files are deleted, and older snapshots only once a newer one loaded.
+    ///
+    /// If the newest snapshot is damaged, an older one is used instead as long as the log still holds every segment
+    /// from the one it covers onwards (the crash came before `deleteSegmentsBefore`); otherwise the error is thrown
+    /// and every file is left in place.
+    static long readLatestSnapshot(Path directory, ObjIntConsumer<String> action) throws IOException {
+        List<Long> snapshots = new ArrayList<>();
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith("snapshot-") && name.endsWith(".tmp")) {
+                        Files.deleteIfExists(file); // An interrupted snapshot.
+                    } else if (name.startsWith("snapshot-") && name.endsWith(".dat")) {
+                        try {
+                            snapshots.add(Long.parseLong(name.substring("snapshot-".length(), name.length() - ".dat".length())));
+                        } catch (NumberFormatException e) {
+                            // Not one of ours.
+                        }
+                    }
+                }
+            }
+        }
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        snapshots.sort(Collections.reverseOrder());
+        List<Long> segments = listSegments(directory);
+
+        IOException failure = null;
+        for (long segment : snapshots) {
+            if (failure != null && !hasSegmentsFrom(segments, segment)) {
+                break; // The log no longer reaches back to this snapshot.
+            }
+            byte[] contents;
+            try {
+                contents = readSnapshot(directory, segment);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+                continue;
+            }
+
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+                in.readLong(); // The segment, checked by readSnapshot.
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_PAYLOAD_BYTES) {
+                        throw new IOException("Snapshot " + segment + " has a bad word length " + length);
+                    }
+                    byte[] word = new byte[length];
+                    in.readFully(word);
+                    action.accept(new String(word, StandardCharsets.UTF_8), in.readInt());
+                }
+            }
+            for (long older : snapshots) {
+                if (older < segment) {
+                    Files.deleteIfExists(directory.resolve("snapshot-" + older + ".dat"));
+                }
+            }
+            return segment;
+        }
+        throw failure;
+    }
+
+    /// Reads a snapshot file and checks its checksum and segment number. Returns its contents without the checksum.
+    private static byte[] readSnapshot(Path directory, long segment) throws IOException {
+        Path path = directory.resolve("snapshot-" + segment + ".dat");
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < 8 + 12) {
+            throw new IOException("Snapshot " + path + " is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) {
+            throw new IOException("Snapshot " + path + " fails its checksum");
+        }
+        if (ByteBuffer.wrap(bytes).getLong() != segment) {
+            throw new IOException("Snapshot " + path + " names the wrong segment");
+        }
+        return Arrays.copyOf(bytes, bytes.length - 8);
+    }
+
+    /// True if `segments` (sorted) holds every segment from `first` up to its newest one.
+    private static boolean hasSegmentsFrom(List<Long> segments, long first) {
+        long expected = first;
+        for (long segment : segments) {
+            if (segment == expected) {
+                expected++;
+            } else if (segment > expected) {
+                return false;
+            }
+        }
+        return expected > first;
+    }
+}
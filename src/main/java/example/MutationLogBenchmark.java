@@ -0,0 +1,102 @@
+package example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/// Measures the durable index: write throughput with group-committed fsyncs, and recovery time
+/// with and without a snapshot.
+///
+/// Usage: MutationLogBenchmark [threads] [mutationsPerThread] [fsync true|false]
+public class MutationLogBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int mutationsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        boolean fsync = args.length <= 2 || Boolean.parseBoolean(args[2]);
+
+        List<String> words = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> words.add(word));
+        Path directory = Files.createTempDirectory("oogl-wal");
+
+        try {
+            // Write throughput: every thread bumps random words; each call returns only once it is durable.
+            long batches;
+            long startTime;
+            long elapsed;
+            try (DurableIndex durable = new DurableIndex(directory, new Trie(), fsync, 0, 0)) {
+                List<Thread> workers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    long seed = t;
+                    workers.add(new Thread(() -> {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < mutationsPerThread; i++) {
+                            durable.increment(words.get(random.nextInt(words.size())), 1);
+                        }
+                    }));
+                }
+                startTime = System.nanoTime();
+                for (Thread worker : workers) {
+                    worker.start();
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+                elapsed = System.nanoTime() - startTime;
+                batches = durable.getLogBatchCount();
+            }
+            long mutations = (long) threads * mutationsPerThread;
+            System.out.println("Threads: " + threads + ", fsync: " + fsync);
+            System.out.println("Mutations: " + mutations + " in " + elapsed / 1_000_000 + " ms ("
+                    + String.format("%.0f", mutations / (elapsed / 1e9)) + " per second)");
+            System.out.println("Log batches: " + batches + " (" + String.format("%.1f", (double) mutations / batches)
+                    + " mutations per " + (fsync ? "fsync" : "write") + ")");
+            System.out.println("Log size: " + Main.formatMemorySize(directorySize(directory)));
+
+            // Recovery from the log alone.
+            try (DurableIndex durable = new DurableIndex(directory, new Trie(), fsync, 0, 0)) {
+                System.out.println("Recovery without snapshot: " + durable.getRecoveredRecords() + " records replayed in "
+                        + durable.getRecoveryNanos() / 1_000_000 + " ms");
+
+                // Snapshot, then a short tail of new mutations.
+                startTime = System.nanoTime();
+                durable.snapshot();
+                System.out.println("Snapshot written in " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+                Random random = new Random(99);
+                for (int i = 0; i < 1000; i++) {
+                    durable.increment(words.get(random.nextInt(words.size())), 1);
+                }
+            }
+
+            try (DurableIndex durable = new DurableIndex(directory, new Trie(), fsync, 0, 0)) {
+                System.out.println("Recovery with snapshot: " + durable.getRecoveredRecords() + " records replayed in "
+                        + durable.getRecoveryNanos() / 1_000_000 + " ms");
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static long directorySize(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            long size = 0;
+            for (Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+            return size;
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
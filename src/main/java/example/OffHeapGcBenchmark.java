@@ -0,0 +1,91 @@
+package example;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/// Compares garbage collection pauses of the on-heap TST against the off-heap TST.
+/// The dictionary is inflated by appending letter suffixes to every CSV word, then a steady stream of queries
+/// (which allocate short-lived garbage) runs while the collectors' pause counters are sampled.
+///
+/// Usage: OffHeapGcBenchmark [heap|offheap] [copies] [seconds]
+public class OffHeapGcBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "offheap";
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        AutocompleteIndex index = mode.equals("heap") ? new TernarySearchTree() : new OffHeapTernarySearchTree();
+
+        long startTime = System.nanoTime();
+        int wordCount = Main.loadDictionary("filtered_words.csv", (word, frequency) -> {
+            for (int copy = 0; copy < copies; copy++) {
+                index.insert(word + suffix(copy), frequency);
+            }
+        });
+        long loadTime = System.nanoTime() - startTime;
+        System.out.println("Loaded " + (long) wordCount * copies + " words into " + mode + " TST in "
+                + loadTime / 1_000_000 + " ms");
+        if (index instanceof OffHeapTernarySearchTree) {
+            OffHeapTernarySearchTree offHeap = (OffHeapTernarySearchTree) index;
+            System.out.println("Off-heap memory: " + Main.formatMemorySize(offHeap.getOffHeapBytes())
+                    + " (" + offHeap.getArena().getName() + " arena)");
+        }
+
+        // Full collection: has to trace every live object, so it grows with an on-heap dictionary.
+        startTime = System.nanoTime();
+        System.gc();
+        System.out.println("Full GC: " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println("Live heap after full GC: " + Main.formatMemorySize(runtime.totalMemory() - runtime.freeMemory()));
+
+        long[] before = sampleCollectors();
+        Random random = new Random(42);
+        long queries = 0;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            String prefix = String.valueOf((char) ('a' + random.nextInt(26)));
+            if (random.nextBoolean()) {
+                prefix += (char) ('a' + random.nextInt(26));
+            }
+            index.getSuggestions(prefix, 10);
+            queries++;
+        }
+        long[] after = sampleCollectors();
+
+        long collections = after[0] - before[0];
+        long pauseMillis = after[1] - before[1];
+        System.out.println("Queries: " + queries);
+        System.out.println("Collections during queries: " + collections);
+        System.out.println("Total collection time: " + pauseMillis + " ms");
+        System.out.println("Average collection time: "
+                + (collections == 0 ? "---" : String.format("%.2f ms", (double) pauseMillis / collections)));
+
+        if (index instanceof OffHeapTernarySearchTree) {
+            ((OffHeapTernarySearchTree) index).close(); // Frees the slabs now rather than after a collection.
+        }
+    }
+
+    /// Sums collection count and time (ms) over every garbage collector.
+    private static long[] sampleCollectors() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[] {count, time};
+    }
+
+    /// Turns a copy number into a lowercase suffix: 0 -> "", 1 -> "a", 26 -> "z", 27 -> "aa", ...
+    static String suffix(int copy) {
+        StringBuilder suffix = new StringBuilder();
+        while (copy > 0) {
+            copy--;
+            suffix.append((char) ('a' + copy % 26));
+            copy /= 26;
+        }
+        return suffix.toString();
+    }
+}
@@ -0,0 +1,476 @@
+package example;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/// A Ternary Search Tree whose nodes live outside the Java heap.
+/// Every node is a fixed-size record inside a direct buffer, and links between nodes are int ids instead of references,
+/// so the garbage collector only ever sees the handful of slab objects, no matter how many words are loaded.
+///
+/// The slabs come from a `SlabArena`; `close()` frees them at once (see `SlabArena` for when that memory is returned).
+public class OffHeapTernarySearchTree implements AutocompleteIndex, Closeable {
+    /// Node record layout (in bytes).
+    private static final int DATA_OFFSET = 0;       // char: the letter stored in the node.
+    private static final int FLAGS_OFFSET = 2;      // short: bit flags, see FLAG_END_OF_WORD.
+    private static final int FREQUENCY_OFFSET = 4;  // int: frequency of the word ending at this node.
+    private static final int LEFT_OFFSET = 8;       // int: id of the left child.
+    private static final int MIDDLE_OFFSET = 12;    // int: id of the middle child.
+    private static final int RIGHT_OFFSET = 16;     // int: id of the right child.
+    private static final int MAX_OFFSET = 20;       // int: highest frequency in the node's ternary subtree.
+    static final int NODE_BYTES = 24;
+
+    private static final short FLAG_END_OF_WORD = 1;
+
+    /// Nodes are allocated in slabs of 2^16 records (1.5 MB each), so growing never copies existing nodes.
+    private static final int SLAB_SHIFT = 16;
+    private static final int SLAB_MASK = (1 << SLAB_SHIFT) - 1;
+    private static final int SLAB_BYTES = NODE_BYTES << SLAB_SHIFT;
+
+    private static final int NULL = 0; // Node id 0 is reserved so that 0 can mean "no child".
+
+    private final SlabArena arena;
+    private ByteBuffer[] slabs = new ByteBuffer[4];
+    private int slabCount = 0;
+    private int nodeCount = 1; // Counts the reserved null node.
+    private int freeList = NULL; // Deleted node records, chained through their middle link, reused before growing.
+    private int freeCount = 0;
+    private int wordCount = 0;
+    private int root = NULL;
+    private boolean closed;
+    private volatile QueryProbe probe; // Optional metrics hook, see setQueryProbe.
+
+    public OffHeapTernarySearchTree() {
+        this(SlabArena.create());
+    }
+
+    public OffHeapTernarySearchTree(SlabArena arena) {
+        this.arena = arena;
+    }
+
+    @Override
+    public void insert(String word, int frequency) {
+        if (word.isEmpty()) return; // Skips over empty words, if any.
+
+        if (root == NULL) {
+            root = allocate(word.charAt(0));
+        }
+
+        int node = root;
+        int index = 0;
+        int[] path = new int[word.length() * 2]; // Nodes passed on the way down, whose maxima may change.
+        int pathLength = 0;
+        while (true) {
+            if (pathLength == path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[pathLength++] = node;
+            char c = word.charAt(index);
+            char data = getData(node);
+
+            if (c < data) { // Same as the recursive TST: walk left, creating the node if needed.
+                int next = getLink(node, LEFT_OFFSET);
+                if (next == NULL) {
+                    next = allocate(c);
+                    setLink(node, LEFT_OFFSET, next);
+                }
+                node = next;
+            } else if (c > data) {
+                int next = getLink(node, RIGHT_OFFSET);
+                if (next == NULL) {
+                    next = allocate(c);
+                    setLink(node, RIGHT_OFFSET, next);
+                }
+                node = next;
+            } else if (index < word.length() - 1) { // The word is not finished, continue down the middle.
+                index++;
+                int next = getLink(node, MIDDLE_OFFSET);
+                if (next == NULL) {
+                    next = allocate(word.charAt(index));
+                    setLink(node, MIDDLE_OFFSET, next);
+                }
+                node = next;
+            } else {
+                if (!isEndOfWord(node)) {
+                    wordCount++;
+                }
+                setFlags(node, (short) (getFlags(node) | FLAG_END_OF_WORD));
+                setFrequency(node, frequency);
+                // Bottom-up, since a re-inserted word may have lowered its frequency.
+                for (int i = pathLength - 1; i >= 0; i--) {
+                    updateMax(path[i]);
+                }
+                return;
+            }
+        }
+    }
+
+    /// Removes a word. Records of nodes that no longer lead to a word go on a free list and are reused by later inserts,
+    /// so churn does not grow the slabs.
+    @Override
+    public boolean delete(String word) {
+        if (word.isEmpty()) return false;
+        int before = wordCount;
+        root = delete(root, word, 0);
+        return wordCount < before;
+    }
+
+    /// Recursive helper for deletion (depth is bounded by the word length plus the left/right hops).
+    /// Returns the id that replaces `node` in its parent.
+    private int delete(int node, String word, int index) {
+        if (node == NULL) {
+            return NULL;
+        }
+
+        char c = word.charAt(index);
+        char data = getData(node);
+        if (c < data) {
+            setLink(node, LEFT_OFFSET, delete(getLink(node, LEFT_OFFSET), word, index));
+            updateMax(node);
+            return node;
+        } else if (c > data) {
+            setLink(node, RIGHT_OFFSET, delete(getLink(node, RIGHT_OFFSET), word, index));
+            updateMax(node);
+            return node;
+        }
+
+        if (index < word.length() - 1) {
+            setLink(node, MIDDLE_OFFSET, delete(getLink(node, MIDDLE_OFFSET), word, index + 1));
+        } else if (isEndOfWord(node)) {
+            setFlags(node, (short) (getFlags(node) & ~FLAG_END_OF_WORD));
+            setFrequency(node, 0);
+            wordCount--;
+        }
+
+        if (isEndOfWord(node) || getLink(node, MIDDLE_OFFSET) != NULL) {
+            updateMax(node);
+            return node; // Still on the path of some other word.
+        }
+        int replacement = unlink(node);
+        release(node);
+        return replacement;
+    }
+
+    /// Returns what takes the place of `node` in its binary search tree level, like TernarySearchTree.removeNode.
+    private int unlink(int node) {
+        int left = getLink(node, LEFT_OFFSET);
+        int right = getLink(node, RIGHT_OFFSET);
+        if (left == NULL) {
+            return right;
+        }
+        if (right == NULL) {
+            return left;
+        }
+        int parent = node;
+        int successor = right;
+        while (getLink(successor, LEFT_OFFSET) != NULL) {
+            parent = successor;
+            successor = getLink(successor, LEFT_OFFSET);
+        }
+        if (parent != node) {
+            setLink(parent, LEFT_OFFSET, getLink(successor, RIGHT_OFFSET));
+            setLink(successor, RIGHT_OFFSET, right);
+            updateLeftSpine(right, parent);
+        }
+        setLink(successor, LEFT_OFFSET, left);
+        updateMax(successor);
+        return successor;
+    }
+
+    /// Refreshes the subtree maximum of the nodes from `top` down the left links to `bottom`, bottom-up.
+    /// These are the nodes whose leftmost branch lost the successor in unlink.
+    private void updateLeftSpine(int top, int bottom) {
+        if (top != bottom) {
+            updateLeftSpine(getLink(top, LEFT_OFFSET), bottom);
+        }
+        updateMax(top);
+    }
+
+    /// Recomputes the subtree maximum of `node` from its own word and its three children.
+    private void updateMax(int node) {
+        int max = isEndOfWord(node) ? getFrequency(node) : Integer.MIN_VALUE;
+        for (int linkOffset = LEFT_OFFSET; linkOffset <= RIGHT_OFFSET; linkOffset += 4) {
+            int child = getLink(node, linkOffset);
+            if (child != NULL) {
+                max = Math.max(max, getMax(child));
+            }
+        }
+        slab(node).putInt(offset(node) + MAX_OFFSET, max);
+    }
+
+    /// Puts a node record on the free list.
+    private void release(int node) {
+        setLink(node, MIDDLE_OFFSET, freeList);
+        freeList = node;
+        freeCount++;
+    }
+
+    @Override
+    public int getFrequency(String word) {
+        int node = searchPrefix(word, null);
+        return node != NULL && isEndOfWord(node) ? getFrequency(node) : 0;
+    }
+
+    @Override
+    public List<String> getSuggestions(String prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        TopK best = new TopK(limit);
+        int[] counters = new int[2]; // Nodes visited and candidates considered, reported to the probe.
+
+        if (prefix.isEmpty()) {
+            collectTopK(root, "", best, counters);
+        } else {
+            int lastNode = searchPrefix(prefix, counters);
+            if (lastNode != NULL) {
+                if (isEndOfWord(lastNode)) {
+                    best.offer(prefix, getFrequency(lastNode));
+                    counters[1]++;
+                }
+                collectTopK(getLink(lastNode, MIDDLE_OFFSET), prefix, best, counters);
+            }
+        }
+
+        List<String> suggestions = best.drainWords();
+
+        QueryProbe probe = this.probe;
+        if (probe != null) {
+            probe.queryFinished(counters[0], counters[1], suggestions.size());
+        }
+        return suggestions;
+    }
+
+    @Override
+    public void setQueryProbe(QueryProbe probe) {
+        this.probe = probe;
+    }
+
+    /// Number of distinct words stored.
+    public int size() {
+        return wordCount;
+    }
+
+    /// Number of nodes in use, not counting the reserved null node or freed records.
+    public int getNodeCount() {
+        return nodeCount - 1 - freeCount;
+    }
+
+    /// Bytes of native memory reserved by the slabs.
+    public long getOffHeapBytes() {
+        return (long) slabCount * SLAB_BYTES;
+    }
+
+    public SlabArena getArena() {
+        return arena;
+    }
+
+    /// Frees the slabs. The tree is empty afterwards and rejects further inserts.
+    @Override
+    public void close() {
+        closed = true;
+        root = NULL;
+        wordCount = 0;
+        nodeCount = 1;
+        freeList = NULL;
+        freeCount = 0;
+        slabs = new ByteBuffer[4];
+        slabCount = 0;
+        arena.close();
+    }
+
+    /// Searches for the node with a trace for the appropriate prefix.
+    /// If `counters` is given, counters[0] is increased by the number of nodes visited.
+    private int searchPrefix(String prefix, int[] counters) {
+        if (prefix.isEmpty()) {
+            return NULL;
+        }
+
+        int node = root;
+        int index = 0;
+        while (node != NULL) {
+            if (counters != null) {
+                counters[0]++;
+            }
+            char c = prefix.charAt(index);
+            char data = getData(node);
+
+            if (c < data) {
+                node = getLink(node, LEFT_OFFSET);
+            } else if (c > data) {
+                node = getLink(node, RIGHT_OFFSET);
+            } else {
+                if (index == prefix.length() - 1) {
+                    return node;
+                }
+                index++;
+                node = getLink(node, MIDDLE_OFFSET);
+            }
+        }
+        return NULL;
+    }
+
+    /// Offers the words of the subtree below `start` to `best`, skipping subtrees whose maximum cannot beat the
+    /// weakest of a full heap. A word's String is only built when it is good enough to enter the heap.
+    /// Adds the nodes visited to counters[0] and the words ranked to counters[1].
+    private void collectTopK(int start, String prefix, TopK best, int[] counters) {
+        counters[0] += walk(start, best, (path, length, frequency) -> {
+            counters[1]++;
+            if (best.accepts(frequency)) {
+                best.offer(prefix + new String(path, 0, length), frequency);
+            }
+        });
+    }
+
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        walk(root, null, (path, length, frequency) -> action.accept(new String(path, 0, length), frequency));
+    }
+
+    /// Receives the words found by `walk`: the letters below the starting node are `path[0..length)`.
+    private interface WordVisitor {
+        void visit(char[] path, int length, int frequency);
+    }
+
+    /// Walks the whole subtree below `start` iteratively (an explicit stack instead of recursion, so deep trees cannot
+    /// overflow the thread stack) and reports every word in it. If `best` is given, subtrees whose maximum it would
+    /// not accept are skipped. Returns the number of nodes visited.
+    private int walk(int start, TopK best, WordVisitor visitor) {
+        if (start == NULL) {
+            return 0;
+        }
+
+        int[] nodeStack = new int[64];
+        int[] depthStack = new int[64];
+        char[] path = new char[32]; // Letters below the prefix, path[depth] belongs to the node being visited.
+        int top = 0;
+        nodeStack[top] = start;
+        depthStack[top] = 0;
+        top++;
+        int visited = 0;
+
+        while (top > 0) {
+            top--;
+            int node = nodeStack[top];
+            int depth = depthStack[top];
+            if (best != null && !best.accepts(getMax(node))) {
+                continue;
+            }
+            visited++;
+
+            if (depth >= path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+            }
+            path[depth] = getData(node);
+
+            if (isEndOfWord(node)) {
+                visitor.visit(path, depth + 1, getFrequency(node));
+            }
+
+            if (top + 3 > nodeStack.length) {
+                nodeStack = Arrays.copyOf(nodeStack, nodeStack.length * 2);
+                depthStack = Arrays.copyOf(depthStack, depthStack.length * 2);
+            }
+            // The middle child is pushed last so its subtree is finished before a sibling overwrites path[depth].
+            int right = getLink(node, RIGHT_OFFSET);
+            if (right != NULL) {
+                nodeStack[top] = right;
+                depthStack[top++] = depth;
+            }
+            int left = getLink(node, LEFT_OFFSET);
+            if (left != NULL) {
+                nodeStack[top] = left;
+                depthStack[top++] = depth;
+            }
+            int middle = getLink(node, MIDDLE_OFFSET);
+            if (middle != NULL) {
+                nodeStack[top] = middle;
+                depthStack[top++] = depth + 1;
+            }
+        }
+        return visited;
+    }
+
+    /// Reserves a node record, reusing a freed one if possible, and returns its id.
+    private int allocate(char data) {
+        if (freeList != NULL) {
+            int id = freeList;
+            freeList = getLink(id, MIDDLE_OFFSET);
+            freeCount--;
+            ByteBuffer slab = slab(id);
+            int offset = offset(id);
+            for (int i = 0; i < NODE_BYTES; i += 4) {
+                slab.putInt(offset + i, 0); // Clear the old record.
+            }
+            slab.putChar(offset + DATA_OFFSET, data);
+            slab.putInt(offset + MAX_OFFSET, Integer.MIN_VALUE); // No word in the subtree yet.
+            return id;
+        }
+        if (closed) {
+            throw new IllegalStateException("Off-heap TST is closed");
+        }
+        if (nodeCount == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap TST is full");
+        }
+        int id = nodeCount++;
+        int slab = id >>> SLAB_SHIFT;
+        if (slab == slabCount) {
+            if (slabCount == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabs.length * 2);
+            }
+            slabs[slabCount++] = arena.allocate(SLAB_BYTES);
+        }
+        // A fresh slab is zeroed, so flags, frequency and links already read as empty.
+        slabs[slab].putChar(offset(id) + DATA_OFFSET, data);
+        slabs[slab].putInt(offset(id) + MAX_OFFSET, Integer.MIN_VALUE);
+        return id;
+    }
+
+    private static int offset(int node) {
+        return (node & SLAB_MASK) * NODE_BYTES;
+    }
+
+    private ByteBuffer slab(int node) {
+        return slabs[node >>> SLAB_SHIFT];
+    }
+
+    private char getData(int node) {
+        return slab(node).getChar(offset(node) + DATA_OFFSET);
+    }
+
+    private short getFlags(int node) {
+        return slab(node).getShort(offset(node) + FLAGS_OFFSET);
+    }
+
+    private void setFlags(int node, short flags) {
+        slab(node).putShort(offset(node) + FLAGS_OFFSET, flags);
+    }
+
+    private boolean isEndOfWord(int node) {
+        return (getFlags(node) & FLAG_END_OF_WORD) != 0;
+    }
+
+    private int getFrequency(int node) {
+        return slab(node).getInt(offset(node) + FREQUENCY_OFFSET);
+    }
+
+    private void setFrequency(int node, int frequency) {
+        slab(node).putInt(offset(node) + FREQUENCY_OFFSET, frequency);
+    }
+
+    private int getMax(int node) {
+        return slab(node).getInt(offset(node) + MAX_OFFSET);
+    }
+
+    private int getLink(int node, int linkOffset) {
+        return slab(node).getInt(offset(node) + linkOffset);
+    }
+
+    private void setLink(int node, int linkOffset, int child) {
+        slab(node).putInt(offset(node) + linkOffset, child);
+    }
+}
@@ -0,0 +1,257 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/// Read-optimized trie packed into flat arrays.
+///
+/// Nodes are numbered in depth-first (preorder) order, so the subtree of any node is the contiguous id range
+/// `[node, subtreeEnd[node])`: collecting completions is a scan over that range which jumps straight to
+/// `subtreeEnd` past any subtree whose highest frequency (`subtreeMax`) cannot enter the top-K, and words are only
+/// spelled out (by following `parent`) for the few candidates that make it into the top-K. The children of a node are
+/// its edges `[edgeStart[node], edgeStart[node + 1])`, with their letters sorted in `edgeLabels` and target nodes in
+/// `edgeTargets`. Finding a child by letter is done by a `LabelScanner`, which can use SIMD instructions.
+///
+/// The arrays are packed in one go from a word table. Mutations update the table and mark the arrays stale, and the
+/// next query repacks them, so this suits a dictionary that is loaded and then mostly read. Like the other engines,
+/// mutations must not run concurrently with queries.
+public class PackedTrie implements AutocompleteIndex {
+    private final LabelScanner scanner;
+    private final Map<String, Integer> words = new HashMap<>();
+
+    // Packed structure, one entry per node (the root is node 0) or per edge.
+    private char[] letter = new char[1]; // Letter on the edge into each node.
+    private int[] parent = new int[1];
+    private int[] subtreeEnd = {1};
+    private int[] frequency = new int[1];
+    private int[] subtreeMax = {Integer.MIN_VALUE}; // Highest frequency of a word in the node's subtree.
+    private BitSet endOfWord = new BitSet();
+    private int[] edgeStart = new int[2];
+    private char[] edgeLabels = new char[LabelScanner.PADDING];
+    private int[] edgeTargets = new int[0];
+    private volatile boolean stale;
+
+    private volatile QueryProbe probe; // Optional metrics hook, see setQueryProbe.
+
+    public PackedTrie() {
+        this(LabelScanner.create());
+    }
+
+    public PackedTrie(LabelScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    @Override
+    public void insert(String word, int wordFrequency) {
+        if (word.isEmpty()) return; // Skips over empty words, like the other engines.
+        Integer previous = words.put(word, wordFrequency);
+        if (previous == null || previous != wordFrequency) {
+            stale = true;
+        }
+    }
+
+    @Override
+    public boolean delete(String word) {
+        if (words.remove(word) == null) {
+            return false;
+        }
+        stale = true;
+        return true;
+    }
+
+    @Override
+    public List<String> getSuggestions(String prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        if (stale) {
+            pack();
+        }
+
+        int[] visited = new int[1];
+        int node = findNode(prefix, visited);
+        TopK best = new TopK(limit);
+        int candidates = 0;
+
+        if (node >= 0) {
+            int end = subtreeEnd[node];
+            int id = node;
+            while (id < end) {
+                visited[0]++;
+                if (!best.accepts(subtreeMax[id])) {
+                    id = subtreeEnd[id]; // Preorder: the next node outside this subtree.
+                    continue;
+                }
+                if (endOfWord.get(id)) {
+                    candidates++;
+                    int wordFrequency = frequency[id];
+                    if (best.accepts(wordFrequency)) { // Spelling the word out is the expensive part.
+                        best.offer(spell(prefix, node, id), wordFrequency);
+                    }
+                }
+                id++;
+            }
+        }
+
+        List<String> suggestions = best.drainWords();
+
+        QueryProbe probe = this.probe;
+        if (probe != null) {
+            probe.queryFinished(visited[0], candidates, suggestions.size());
+        }
+        return suggestions;
+    }
+
+    @Override
+    public void setQueryProbe(QueryProbe probe) {
+        this.probe = probe;
+    }
+
+    @Override
+    public int getFrequency(String word) {
+        Integer wordFrequency = words.get(word);
+        return wordFrequency == null ? 0 : wordFrequency;
+    }
+
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        words.forEach(action::accept);
+    }
+
+    /// Node reached by following `prefix` from the root, or -1. Adds the number of nodes passed to `visited[0]`.
+    public int findNode(String prefix, int[] visited) {
+        if (stale) {
+            pack();
+        }
+        int node = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            int edge = scanner.indexOf(edgeLabels, edgeStart[node], edgeStart[node + 1], prefix.charAt(i));
+            if (edge < 0) {
+                return -1;
+            }
+            node = edgeTargets[edge];
+            visited[0]++;
+        }
+        return node;
+    }
+
+    /// (Re)packs the arrays from the word table. Queries call this on demand; calling it right after loading keeps
+    /// the packing out of the first query.
+    public synchronized void pack() {
+        if (!stale) {
+            return;
+        }
+        List<String> sorted = new ArrayList<>(words.keySet());
+        Collections.sort(sorted); // Sorted words produce their nodes in preorder.
+
+        int capacity = 1;
+        for (String word : sorted) {
+            capacity += word.length(); // Upper bound on the node count.
+        }
+        char[] letter = new char[capacity];
+        int[] parent = new int[capacity];
+        int[] subtreeEnd = new int[capacity];
+        int[] frequency = new int[capacity];
+        BitSet endOfWord = new BitSet(capacity);
+        int[] childCount = new int[capacity];
+
+        int[] path = new int[16]; // path[d] is the node at depth d of the previous word; path[0] is the root.
+        int nodeCount = 1;
+        parent[0] = -1;
+        String previous = "";
+        for (String word : sorted) {
+            int common = 0;
+            while (common < previous.length() && common < word.length() && previous.charAt(common) == word.charAt(common)) {
+                common++;
+            }
+            for (int depth = previous.length(); depth > common; depth--) {
+                subtreeEnd[path[depth]] = nodeCount; // The previous word's branch below the common part is complete.
+            }
+            if (word.length() >= path.length) {
+                path = Arrays.copyOf(path, word.length() * 2);
+            }
+            for (int depth = common + 1; depth <= word.length(); depth++) {
+                int node = nodeCount++;
+                letter[node] = word.charAt(depth - 1);
+                parent[node] = path[depth - 1];
+                childCount[path[depth - 1]]++;
+                path[depth] = node;
+            }
+            int node = path[word.length()];
+            endOfWord.set(node);
+            frequency[node] = words.get(word);
+            previous = word;
+        }
+        for (int depth = previous.length(); depth >= 0; depth--) {
+            subtreeEnd[path[depth]] = nodeCount;
+        }
+
+        int[] subtreeMax = new int[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            subtreeMax[node] = endOfWord.get(node) ? frequency[node] : Integer.MIN_VALUE;
+        }
+        for (int node = nodeCount - 1; node > 0; node--) { // Children have higher ids than their parent.
+            subtreeMax[parent[node]] = Math.max(subtreeMax[parent[node]], subtreeMax[node]);
+        }
+
+        int[] edgeStart = new int[nodeCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            edgeStart[node + 1] = edgeStart[node] + childCount[node];
+        }
+        char[] edgeLabels = new char[nodeCount - 1 + LabelScanner.PADDING];
+        Arrays.fill(edgeLabels, nodeCount - 1, edgeLabels.length, Character.MAX_VALUE);
+        int[] edgeTargets = new int[nodeCount - 1];
+        int[] nextEdge = Arrays.copyOf(edgeStart, nodeCount);
+        for (int node = 1; node < nodeCount; node++) { // Children come in id order, which is letter order.
+            int edge = nextEdge[parent[node]]++;
+            edgeLabels[edge] = letter[node];
+            edgeTargets[edge] = node;
+        }
+
+        this.letter = Arrays.copyOf(letter, nodeCount);
+        this.parent = Arrays.copyOf(parent, nodeCount);
+        this.subtreeEnd = Arrays.copyOf(subtreeEnd, nodeCount);
+        this.frequency = Arrays.copyOf(frequency, nodeCount);
+        this.subtreeMax = subtreeMax;
+        this.endOfWord = endOfWord;
+        this.edgeStart = edgeStart;
+        this.edgeLabels = edgeLabels;
+        this.edgeTargets = edgeTargets;
+        stale = false; // Volatile write last, so queries that see it also see the new arrays.
+    }
+
+    /// Number of nodes in the packed arrays, the root included.
+    public int getNodeCount() {
+        return letter.length;
+    }
+
+    /// Bytes held by the packed arrays.
+    public long getPackedBytes() {
+        return letter.length * 18L + endOfWord.size() / 8 + edgeStart.length * 4L + edgeLabels.length * 2L
+                + edgeTargets.length * 4L;
+    }
+
+    public LabelScanner getScanner() {
+        return scanner;
+    }
+
+    /// The word ending at `id`, which lies in the subtree of `node` whose word is `prefix`.
+    private String spell(String prefix, int node, int id) {
+        int length = 0;
+        for (int n = id; n != node; n = parent[n]) {
+            length++;
+        }
+        char[] word = new char[prefix.length() + length];
+        prefix.getChars(0, prefix.length(), word, 0);
+        for (int n = id, i = word.length - 1; n != node; n = parent[n], i--) {
+            word[i] = letter[n];
+        }
+        return new String(word);
+    }
+}
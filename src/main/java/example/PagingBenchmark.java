@@ -0,0 +1,80 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/// "Show more" paging: fetching pages of completions with `getSuggestions` and a growing limit (every page recomputes
+/// from scratch) against keeping one `completions` iterator and taking the next page from it.
+/// The dictionary is inflated by appending letter suffixes to every CSV word; prefixes are 1 or 2 letters.
+///
+/// Usage: PagingBenchmark [copies] [pages] [pageSize] [sessions]
+public class PagingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int pageSize = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int sessions = args.length > 3 ? Integer.parseInt(args[3]) : 2_000;
+
+        Trie trie = new Trie();
+        TernarySearchTree tst = new TernarySearchTree();
+        List<String> words = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> {
+            for (int copy = 0; copy < copies; copy++) {
+                String copyWord = word + OffHeapGcBenchmark.suffix(copy);
+                words.add(copyWord);
+                trie.insert(copyWord, frequency);
+                tst.insert(copyWord, frequency);
+            }
+        });
+        System.out.println("Words: " + words.size() + ", " + pages + " pages of " + pageSize);
+
+        Random random = new Random(23);
+        String[] prefixes = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            prefixes[i] = word.substring(0, Math.min(word.length(), 1 + random.nextInt(2)));
+        }
+
+        for (int round = 0; round < 2; round++) { // The first round is warm-up.
+            boolean report = round == 1;
+            measure(report, "Trie getSuggestions", prefixes, prefix -> {
+                for (int page = 1; page <= pages; page++) {
+                    trie.getSuggestions(prefix, page * pageSize);
+                }
+            });
+            measure(report, "Trie completions", prefixes, prefix -> {
+                CompletionIterator<?> completions = trie.completions(prefix);
+                for (int page = 1; page <= pages; page++) {
+                    completions.next(pageSize);
+                }
+            });
+            measure(report, "TST getSuggestions", prefixes, prefix -> {
+                for (int page = 1; page <= pages; page++) {
+                    tst.getSuggestions(prefix, page * pageSize);
+                }
+            });
+            measure(report, "TST completions", prefixes, prefix -> {
+                CompletionIterator<?> completions = tst.completions(prefix);
+                for (int page = 1; page <= pages; page++) {
+                    completions.next(pageSize);
+                }
+            });
+        }
+    }
+
+    private static void measure(boolean report, String name, String[] prefixes, Consumer<String> session) {
+        LatencyHistogram latency = new LatencyHistogram();
+        for (String prefix : prefixes) {
+            long startTime = System.nanoTime();
+            session.accept(prefix);
+            latency.record(System.nanoTime() - startTime);
+        }
+        if (report) {
+            System.out.println(String.format("%-22s all pages p50 %8d us  p99 %8d us", name,
+                    latency.getValueAtPercentile(50) / 1000, latency.getValueAtPercentile(99) / 1000));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package example;
+
+/// Receives per-query work counters from an engine, see `AutocompleteIndex.setQueryProbe`.
+public interface QueryProbe {
+    /// Called once per `getSuggestions` call.
+    /// `nodesVisited` counts nodes touched (prefix descent and collection), `candidatesConsidered` counts words
+    /// that were ranked, and `returned` is the size of the result.
+    void queryFinished(int nodesVisited, int candidatesConsidered, int returned);
+
+    /// Called after `queryFinished` by engines that cache partial results (`HybridIndex` caches the top words of each
+    /// slot): how many cached lists the query could reuse and how many it had to recompute.
+    default void cacheLookups(int hits, int misses) {
+    }
+}
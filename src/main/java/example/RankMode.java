@@ -0,0 +1,47 @@
+package example;
+
+/// How `Trie` and `TernarySearchTree` store word frequencies.
+///
+/// Ranking only needs the order of the counts, and the CSV counts span several orders of magnitude, so the compact
+/// modes keep a log-scale rank instead of the count: rank = 1 + floor(log2(1 + count) * bucketsPerDoubling).
+/// Rank 0 is reserved for "not a word", which lets the compact nodes drop their separate end-of-word flag.
+/// Counts that land in the same bucket tie, and ties are broken by the word itself (alphabetically) like exact ties.
+public enum RankMode {
+    /// Full 32-bit counts (the default).
+    EXACT(0),
+    /// 16-bit ranks, 2048 buckets per doubling: counts closer than about 0.03% may tie.
+    LOG16(2048),
+    /// 8-bit ranks, 8 buckets per doubling: counts within about 9% of each other may tie.
+    LOG8(8);
+
+    private static final double LN_2 = Math.log(2);
+
+    private final int bucketsPerDoubling;
+
+    RankMode(int bucketsPerDoubling) {
+        this.bucketsPerDoubling = bucketsPerDoubling;
+    }
+
+    /// The value the nodes store and rank by: the count itself when exact, otherwise its rank (at least 1).
+    /// Negative counts rank like 0.
+    public int encode(int frequency) {
+        if (this == EXACT) {
+            return frequency;
+        }
+        if (frequency <= 0) {
+            return 1;
+        }
+        return 1 + (int) (Math.log1p(frequency) / LN_2 * bucketsPerDoubling);
+    }
+
+    /// Approximate count for a stored value: the smallest count in its bucket.
+    public int decode(int score) {
+        if (this == EXACT) {
+            return score;
+        }
+        if (score <= 1) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(Math.pow(2, (score - 1) / (double) bucketsPerDoubling) - 1));
+    }
+}
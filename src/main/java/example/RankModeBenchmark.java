@@ -0,0 +1,81 @@
+package example;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/// Memory saving and ranking change of the compact rank modes against exact counts, for the Trie and the TST.
+/// The dictionary is inflated by appending letter suffixes to every CSV word (copies keep the original count, so
+/// they tie exactly and only the count quantization changes the order). Rankings are compared on the top 10 of
+/// `completions`, which breaks ties by word in every mode.
+///
+/// Memory is the heap growth around each load, read with `Main.usedHeap` like the other benchmarks.
+///
+/// Usage: RankModeBenchmark [copies] [queries]
+public class RankModeBenchmark {
+    private static final int TOP = 10;
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 150;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        List<String> words = new ArrayList<>();
+        List<Integer> frequencies = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> {
+            for (int copy = 0; copy < copies; copy++) {
+                words.add(word + OffHeapGcBenchmark.suffix(copy));
+                frequencies.add(frequency);
+            }
+        });
+        Random random = new Random(29);
+        String[] prefixes = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            prefixes[i] = word.substring(0, Math.min(word.length(), 1 + random.nextInt(3)));
+        }
+        System.out.println("Words: " + words.size() + ", prefixes of 1 to 3 letters, top " + TOP);
+        System.out.println(String.format("%-6s %-6s %12s %16s %14s", "engine", "mode", "memory", "identical top", "overlap"));
+
+        for (String engine : new String[]{"trie", "tst"}) {
+            List<List<String>> exact = null;
+            for (RankMode mode : RankMode.values()) {
+                long heapBefore = Main.usedHeap();
+                Object index = engine.equals("trie") ? new Trie(mode) : new TernarySearchTree(mode);
+                for (int i = 0; i < words.size(); i++) {
+                    ((AutocompleteIndex) index).insert(words.get(i), frequencies.get(i));
+                }
+                long memory = Main.usedHeap() - heapBefore;
+                Reference.reachabilityFence(index); // Otherwise the JIT may let the index be collected before the reading.
+
+                List<List<String>> results = new ArrayList<>(queries);
+                for (String prefix : prefixes) {
+                    results.add(index instanceof Trie
+                            ? ((Trie) index).completions(prefix).next(TOP)
+                            : ((TernarySearchTree) index).completions(prefix).next(TOP));
+                }
+                if (exact == null) {
+                    exact = results;
+                }
+
+                int identical = 0;
+                long shared = 0;
+                long total = 0;
+                for (int i = 0; i < queries; i++) {
+                    List<String> expected = exact.get(i);
+                    if (results.get(i).equals(expected)) {
+                        identical++;
+                    }
+                    Set<String> overlap = new HashSet<>(expected);
+                    overlap.retainAll(results.get(i));
+                    shared += overlap.size();
+                    total += expected.size();
+                }
+                System.out.println(String.format("%-6s %-6s %12s %15.1f%% %13.1f%%", engine, mode,
+                        Main.formatMemorySize(memory), 100.0 * identical / queries, 100.0 * shared / Math.max(1, total)));
+            }
+        }
+    }
+}
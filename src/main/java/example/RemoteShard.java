@@ -0,0 +1,258 @@
+package example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ObjIntConsumer;
+
+/// Client side of a `ShardServer`: a shard that lives in another process on this machine, reached over loopback.
+/// One connection is kept open and requests on it are serialized.
+///
+/// Every read on the connection gives up after the read timeout, so a shard that stops answering cannot hold a caller
+/// (or the lock that serializes requests) forever. A request that failed or was aborted closes the connection, and the
+/// next request opens a new one. `abort` only closes the connection while the given thread's own request is on it.
+public class RemoteShard implements ShardedIndex.Shard {
+    public static final int CONNECT_TIMEOUT_MILLIS = 2_000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 5_000;
+    public static final long STARTUP_TIMEOUT_MILLIS = 30_000;
+
+    private final int port;
+    private final int readTimeoutMillis;
+    private final Process process; // The server process, if this client started it.
+    private volatile Socket socket; // Volatile so abort() can close it while a request holds the lock.
+    private BufferedReader in;
+    private BufferedWriter out;
+    private final Object abortLock = new Object(); // Guards inFlight, so abort() cannot hit the next request.
+    private Thread inFlight; // The thread whose request is on the connection, or null.
+
+    public RemoteShard(int port) throws IOException {
+        this(port, DEFAULT_READ_TIMEOUT_MILLIS, null);
+    }
+
+    public RemoteShard(int port, int readTimeoutMillis) throws IOException {
+        this(port, readTimeoutMillis, null);
+    }
+
+    private RemoteShard(int port, int readTimeoutMillis, Process process) throws IOException {
+        this.port = port;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.process = process;
+        connect();
+    }
+
+    /// Starts a `ShardServer` in a new JVM (same java binary and classpath as this one) and connects to it.
+    /// Closing the returned shard also stops the process. If the server is not ready within `STARTUP_TIMEOUT_MILLIS`,
+    /// the process is killed and an IOException thrown.
+    public static RemoteShard launch(String dictionaryFile, int shardId, int shardCount,
+                                     ShardedIndex.Partitioning partitioning, String engine,
+                                     long delayMillis) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShardServer.class.getName(), "0", dictionaryFile, String.valueOf(shardId), String.valueOf(shardCount),
+                partitioning.name(), engine, String.valueOf(delayMillis));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+
+        RemoteShard shard = null;
+        try {
+            // The server announces its port once the dictionary is loaded.
+            int port = awaitReady(process).get(STARTUP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            shard = new RemoteShard(port, DEFAULT_READ_TIMEOUT_MILLIS, process);
+            return shard;
+        } catch (TimeoutException e) {
+            throw new IOException("Shard server " + shardId + " was not ready after " + STARTUP_TIMEOUT_MILLIS + " ms");
+        } catch (ExecutionException e) {
+            throw new IOException("Shard server " + shardId + " exited before it was ready", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while shard server " + shardId + " was starting");
+        } finally {
+            if (shard == null) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void insert(String word, int frequency) throws IOException {
+        String reply = request("INSERT " + frequency + " " + ShardServer.checkWord(word));
+        if (!reply.equals("OK")) {
+            throw new IOException("Shard rejected insert: " + reply);
+        }
+    }
+
+    @Override
+    public synchronized boolean delete(String word) throws IOException {
+        String reply = request("DELETE " + ShardServer.checkWord(word));
+        if (!reply.equals("1") && !reply.equals("0")) {
+            throw new IOException("Shard rejected delete: " + reply);
+        }
+        return reply.equals("1");
+    }
+
+    @Override
+    public synchronized List<WordFrequency> topK(String prefix, int limit) throws IOException {
+        List<WordFrequency> results = new ArrayList<>();
+        request("SUGGEST " + limit + " " + ShardServer.checkWord(prefix), firstLine -> {
+            readWordList(firstLine, (word, frequency) -> results.add(new WordFrequency(word, frequency)));
+            return null;
+        });
+        return results;
+    }
+
+    @Override
+    public synchronized void forEachWord(ObjIntConsumer<String> action) throws IOException {
+        request("WORDS", firstLine -> {
+            readWordList(firstLine, action);
+            return null;
+        });
+    }
+
+    /// Reads `word<TAB>frequency` lines, starting with `line`, up to the terminating empty line.
+    private void readWordList(String line, ObjIntConsumer<String> action) throws IOException {
+        while (!line.isEmpty()) {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                throw new IOException("Unexpected shard reply: " + line);
+            }
+            action.accept(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+            line = readLine();
+        }
+    }
+
+    @Override
+    public synchronized int getFrequency(String word) throws IOException {
+        String reply = request("FREQ " + ShardServer.checkWord(word));
+        try {
+            return Integer.parseInt(reply);
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected shard reply: " + reply);
+        }
+    }
+
+    /// Closes the connection under `caller`'s request, so its blocked read fails right away. Does nothing if `caller`
+    /// has no request on the connection (it finished, or is still waiting for the lock behind another request).
+    /// Not synchronized: the stuck request holds the lock.
+    @Override
+    public void abort(Thread caller) {
+        synchronized (abortLock) {
+            if (inFlight != caller) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing is all that matters here.
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            socket.close();
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+    }
+
+    /// Sends one request line and returns the first reply line.
+    private String request(String line) throws IOException {
+        return request(line, firstLine -> firstLine);
+    }
+
+    /// Sends one request line and reads the whole reply with `reply`, which gets the first line.
+    /// If the connection broke (e.g. the previous caller gave up halfway), it is re-established once.
+    private <T> T request(String line, Reply<T> reply) throws IOException {
+        if (Thread.interrupted()) { // Cancelled while it waited for the lock: nobody wants the answer.
+            throw new InterruptedIOException("Shard request cancelled before it was sent");
+        }
+        synchronized (abortLock) {
+            inFlight = Thread.currentThread();
+        }
+        try {
+            if (socket.isClosed()) {
+                connect();
+            }
+            out.write(line);
+            out.write('\n');
+            out.flush();
+            return reply.read(readLine());
+        } catch (IOException | RuntimeException e) {
+            socket.close(); // The rest of the reply may still be on the way.
+            throw e;
+        } finally {
+            synchronized (abortLock) {
+                inFlight = null;
+            }
+        }
+    }
+
+    /// Reads the rest of a reply, given its first line.
+    private interface Reply<T> {
+        T read(String firstLine) throws IOException;
+    }
+
+    private String readLine() throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            socket.close();
+            throw new IOException("Shard on port " + port + " closed the connection");
+        }
+        return line;
+    }
+
+    private void connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(readTimeoutMillis);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        this.socket = socket;
+    }
+
+    /// Reads the server's stdout in the background: the returned future gets the port from its `READY` line, and the
+    /// rest is discarded so the server never blocks on a full pipe. Fails if the output ends before that line.
+    private static CompletableFuture<Integer> awaitReady(Process process) {
+        CompletableFuture<Integer> ready = new CompletableFuture<>();
+        Thread reader = new Thread(() -> {
+            try (BufferedReader processOut = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = processOut.readLine()) != null) {
+                    if (!ready.isDone() && line.startsWith("READY ")) {
+                        ready.complete(Integer.parseInt(line.substring("READY ".length()).trim()));
+                    }
+                }
+                ready.completeExceptionally(new IOException("Shard server output ended"));
+            } catch (IOException | RuntimeException e) {
+                ready.completeExceptionally(e); // Process ended, or printed a bad port.
+            }
+        }, "shard-stdout");
+        reader.setDaemon(true);
+        reader.start();
+        return ready;
+    }
+}
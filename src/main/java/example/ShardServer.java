@@ -0,0 +1,184 @@
+package example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Serves one shard of the dictionary over a loopback socket, so a `ShardedIndex` in another process can query it.
+///
+/// The protocol is line based (UTF-8). Every request is one line, answered as follows:
+/// - `SUGGEST <limit> <prefix>`: one `word<TAB>frequency` line per suggestion, then an empty line.
+/// - `INSERT <frequency> <word>`: `OK`.
+/// - `DELETE <word>`: `1` if the word was removed, `0` if it was absent.
+/// - `FREQ <word>`: the frequency, 0 if absent.
+/// - `WORDS`: one `word<TAB>frequency` line per stored word, then an empty line.
+/// Everything after the command (after the frequency for `INSERT`) is the word, spaces included. Words containing a
+/// tab or line break would corrupt the replies and are refused. Unknown or malformed requests are answered with
+/// `ERR <message>`.
+///
+/// Usage: ShardServer <port> <dictionaryFile> <shardId> <shardCount> <HASH|FIRST_CHARACTER> [trie|tst|offheap] [delayMillis]
+/// Port 0 picks a free port. Once listening, the server prints `READY <port>` on stdout.
+/// `delayMillis` slows down every query, to simulate an overloaded shard.
+public class ShardServer {
+    private final AutocompleteIndex index;
+    private final long delayMillis;
+
+    public ShardServer(AutocompleteIndex index, long delayMillis) {
+        this.index = index;
+        this.delayMillis = delayMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("Usage: ShardServer <port> <dictionaryFile> <shardId> <shardCount> "
+                    + "<HASH|FIRST_CHARACTER> [trie|tst|offheap] [delayMillis]");
+            System.exit(2);
+        }
+        int port = Integer.parseInt(args[0]);
+        String dictionaryFile = args[1];
+        int shardId = Integer.parseInt(args[2]);
+        int shardCount = Integer.parseInt(args[3]);
+        ShardedIndex.Partitioning partitioning = ShardedIndex.Partitioning.valueOf(args[4]);
+        AutocompleteIndex index = Main.createIndex(args.length > 5 ? args[5] : "tst");
+        long delayMillis = args.length > 6 ? Long.parseLong(args[6]) : 0;
+
+        // Only keep the words this shard owns.
+        Main.loadDictionary(dictionaryFile, (word, frequency) -> {
+            if (partitioning.shardOf(word, shardCount) == shardId) {
+                index.insert(word, frequency);
+            }
+        });
+
+        new ShardServer(index, delayMillis).serve(port);
+    }
+
+    /// Accepts connections forever, one thread per connection.
+    public void serve(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("READY " + serverSocket.getLocalPort());
+            System.out.flush();
+            serve(serverSocket);
+        }
+    }
+
+    /// Accepts connections on an already bound socket, one thread per connection, until the socket is closed.
+    public void serve(ServerSocket serverSocket) throws IOException {
+        while (true) {
+            Socket socket = serverSocket.accept();
+            Thread handler = new Thread(() -> handle(socket), "shard-connection");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                respond(line, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The coordinator went away; nothing left to answer.
+        }
+    }
+
+    private void respond(String request, BufferedWriter out) throws IOException {
+        String[] parts = request.split(" ", 2);
+        String argument = parts.length > 1 ? parts[1] : "";
+        try {
+            switch (parts[0]) {
+                case "SUGGEST": {
+                    String[] limitAndPrefix = argument.split(" ", 2);
+                    int limit = Integer.parseInt(limitAndPrefix[0]);
+                    String prefix = limitAndPrefix.length > 1 ? limitAndPrefix[1] : "";
+                    simulateDelay();
+                    List<WordFrequency> results;
+                    synchronized (index) {
+                        results = ShardedIndex.withFrequencies(index, index.getSuggestions(prefix, limit));
+                    }
+                    for (WordFrequency result : results) {
+                        out.write(result.getWord() + "\t" + result.getFrequency() + "\n");
+                    }
+                    out.write("\n");
+                    break;
+                }
+                case "INSERT": {
+                    String[] frequencyAndWord = argument.split(" ", 2);
+                    int frequency = Integer.parseInt(frequencyAndWord[0]);
+                    String word = checkWord(frequencyAndWord[1]);
+                    synchronized (index) {
+                        index.insert(word, frequency);
+                    }
+                    out.write("OK\n");
+                    break;
+                }
+                case "DELETE": {
+                    boolean deleted;
+                    synchronized (index) {
+                        deleted = index.delete(checkWord(argument));
+                    }
+                    out.write(deleted ? "1\n" : "0\n");
+                    break;
+                }
+                case "FREQ": {
+                    simulateDelay();
+                    int frequency;
+                    synchronized (index) {
+                        frequency = index.getFrequency(checkWord(argument));
+                    }
+                    out.write(frequency + "\n");
+                    break;
+                }
+                case "WORDS": {
+                    List<WordFrequency> words = new ArrayList<>();
+                    synchronized (index) {
+                        index.forEachWord((word, frequency) -> words.add(new WordFrequency(word, frequency)));
+                    }
+                    for (WordFrequency entry : words) {
+                        out.write(entry.getWord() + "\t" + entry.getFrequency() + "\n");
+                    }
+                    out.write("\n");
+                    break;
+                }
+                default:
+                    out.write("ERR unknown request\n");
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            out.write("ERR malformed request\n");
+        } catch (IllegalArgumentException e) {
+            out.write("ERR " + e.getMessage() + "\n");
+        }
+    }
+
+    /// Words travel inside tab-separated, newline-terminated lines, so they must not contain either. Checked on both
+    /// ends: `RemoteShard` refuses to send such a word, and the server refuses to store one.
+    static String checkWord(String word) {
+        if (word.indexOf('\t') >= 0 || word.indexOf('\n') >= 0 || word.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("word contains a tab or line break");
+        }
+        return word;
+    }
+
+    private void simulateDelay() {
+        if (delayMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
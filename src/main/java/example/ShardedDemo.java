@@ -0,0 +1,102 @@
+package example;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/// Runs a sharded index on this machine: each shard is its own JVM reached over loopback.
+/// Checks the merged top-K against a single in-process index, times the queries, then repeats with one
+/// deliberately slow shard to show the coordinator answering without it.
+///
+/// Usage: ShardedDemo [shardCount] [HASH|FIRST_CHARACTER] [timeoutMillis]
+public class ShardedDemo {
+
+    public static void main(String[] args) throws Exception {
+        int shardCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        ShardedIndex.Partitioning partitioning =
+                ShardedIndex.Partitioning.valueOf(args.length > 1 ? args[1] : "HASH");
+        long timeoutMillis = args.length > 2 ? Long.parseLong(args[2]) : 200;
+        String dictionaryFile = "filtered_words.csv";
+
+        OffHeapTernarySearchTree reference = new OffHeapTernarySearchTree();
+        Main.loadDictionary(dictionaryFile, reference);
+
+        System.out.println("Starting " + shardCount + " shard processes (" + partitioning + ")");
+        try (ShardedIndex sharded = launch(dictionaryFile, shardCount, partitioning, timeoutMillis, -1)) {
+            Random random = new Random(7);
+            int mismatches = 0;
+            int queries = 2000;
+            long totalNanos = 0;
+            for (int i = 0; i < queries; i++) {
+                String prefix = randomPrefix(random);
+                long startTime = System.nanoTime();
+                List<WordFrequency> merged = sharded.topK(prefix, 5);
+                totalNanos += System.nanoTime() - startTime;
+
+                List<String> expected = reference.getSuggestions(prefix, 5);
+                List<String> actual = new ArrayList<>();
+                for (WordFrequency result : merged) {
+                    actual.add(result.getWord());
+                }
+                if (!frequenciesOf(reference, expected).equals(frequenciesOf(reference, actual))) {
+                    mismatches++;
+                }
+            }
+            System.out.println("Queries: " + queries + ", mismatches against single index: " + mismatches);
+            System.out.println("Average query time: " + totalNanos / queries + " ns");
+        }
+
+        System.out.println("Restarting with shard 0 delayed past the " + timeoutMillis + " ms timeout");
+        try (ShardedIndex sharded = launch(dictionaryFile, shardCount, partitioning, timeoutMillis, 0)) {
+            long startTime = System.nanoTime();
+            List<String> suggestions = sharded.getSuggestions("", 5);
+            System.out.println("Top words without shard 0: " + suggestions + " in "
+                    + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+            System.out.println("Shard answers dropped: " + sharded.getTimedOutShardQueries());
+        }
+    }
+
+    /// Starts the shard processes; `slowShard` (or -1 for none) sleeps twice the timeout on every query.
+    /// If one of them fails to start, the ones already running are stopped.
+    private static ShardedIndex launch(String dictionaryFile, int shardCount, ShardedIndex.Partitioning partitioning,
+                                      long timeoutMillis, int slowShard) throws Exception {
+        List<ShardedIndex.Shard> shards = new ArrayList<>();
+        ShardedIndex sharded = null;
+        try {
+            for (int shardId = 0; shardId < shardCount; shardId++) {
+                long delayMillis = shardId == slowShard ? timeoutMillis * 2 : 0;
+                shards.add(RemoteShard.launch(dictionaryFile, shardId, shardCount, partitioning, "offheap", delayMillis));
+            }
+            sharded = new ShardedIndex(shards, partitioning, timeoutMillis);
+            return sharded;
+        } finally {
+            if (sharded == null) {
+                for (ShardedIndex.Shard shard : shards) {
+                    try {
+                        shard.close();
+                    } catch (IOException e) {
+                        // RemoteShard.close stops the process even when closing the socket fails.
+                    }
+                }
+            }
+        }
+    }
+
+    private static String randomPrefix(Random random) {
+        StringBuilder prefix = new StringBuilder();
+        int length = random.nextInt(4);
+        for (int i = 0; i < length; i++) {
+            prefix.append((char) ('a' + random.nextInt(26)));
+        }
+        return prefix.toString();
+    }
+
+    private static List<Integer> frequenciesOf(AutocompleteIndex index, List<String> words) {
+        List<Integer> frequencies = new ArrayList<>();
+        for (String word : words) {
+            frequencies.add(index.getFrequency(word));
+        }
+        return frequencies;
+    }
+}
@@ -0,0 +1,338 @@
+package example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjIntConsumer;
+
+/// Coordinator of a sharded index: the word set is split across several shards (in this JVM or in other processes),
+/// prefix queries fan out to every shard that can hold a match, and the per-shard top-K lists are merged.
+/// Shards that do not answer within the timeout are left out of that query's result instead of stalling it.
+///
+/// Shard calls run on a bounded pool. A call that misses its deadline is cancelled, and if it had already started, the
+/// shard is told to `abort` it, so a hung shard cannot pile up blocked threads. Single-shard operations (insert, delete, frequency lookups and
+/// listing) get their own, longer deadline and fail with a ShardException when it passes.
+public class ShardedIndex implements AutocompleteIndex, Closeable {
+
+    /// How words are assigned to shards.
+    public enum Partitioning {
+        /// Spreads words evenly by hash; every prefix query has to visit every shard.
+        HASH,
+        /// Splits 'a'..'z' into contiguous first-letter ranges; a prefix query only visits the shard owning its first letter.
+        FIRST_CHARACTER;
+
+        public int shardOf(String word, int shardCount) {
+            if (this == HASH) {
+                return Math.floorMod(word.hashCode(), shardCount);
+            }
+            char first = word.isEmpty() ? 'a' : word.charAt(0);
+            if (first >= 'a' && first <= 'z') {
+                return (first - 'a') * shardCount / 26;
+            }
+            return first % shardCount; // Anything outside a-z is spread by its code point.
+        }
+    }
+
+    /// One partition of the word set, as seen by the coordinator.
+    public interface Shard extends Closeable {
+        void insert(String word, int frequency) throws IOException;
+
+        boolean delete(String word) throws IOException;
+
+        /// Returns the shard's best `limit` words for `prefix`, with their frequencies, most frequent first.
+        List<WordFrequency> topK(String prefix, int limit) throws IOException;
+
+        int getFrequency(String word) throws IOException;
+
+        void forEachWord(ObjIntConsumer<String> action) throws IOException;
+
+        /// Gives up on the call `caller` is running, after the coordinator stopped waiting for it. Shards whose calls
+        /// can block (on a socket, say) should make that call return soon, but leave calls of other threads alone;
+        /// the shard stays usable afterwards.
+        default void abort(Thread caller) {
+        }
+    }
+
+    /// A shard living in this JVM, wrapping any index.
+    public static class LocalShard implements Shard {
+        private final AutocompleteIndex index;
+
+        public LocalShard(AutocompleteIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public synchronized void insert(String word, int frequency) {
+            index.insert(word, frequency);
+        }
+
+        @Override
+        public synchronized boolean delete(String word) {
+            return index.delete(word);
+        }
+
+        @Override
+        public synchronized List<WordFrequency> topK(String prefix, int limit) {
+            return withFrequencies(index, index.getSuggestions(prefix, limit));
+        }
+
+        @Override
+        public synchronized int getFrequency(String word) {
+            return index.getFrequency(word);
+        }
+
+        @Override
+        public synchronized void forEachWord(ObjIntConsumer<String> action) {
+            index.forEachWord(action);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static final long DEFAULT_OPERATION_TIMEOUT_MILLIS = 5_000;
+    private static final int THREADS_PER_SHARD = 2;
+    private static final int QUEUED_CALLS_PER_THREAD = 16;
+
+    private final List<Shard> shards;
+    private final Partitioning partitioning;
+    private final long timeoutMillis;
+    private final long operationTimeoutMillis;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong timedOutShardQueries = new AtomicLong();
+
+    public ShardedIndex(List<Shard> shards, Partitioning partitioning, long timeoutMillis) {
+        this(shards, partitioning, timeoutMillis, Math.max(timeoutMillis, DEFAULT_OPERATION_TIMEOUT_MILLIS));
+    }
+
+    /// `timeoutMillis` bounds the fan-out of a query; `operationTimeoutMillis` bounds every single-shard operation.
+    public ShardedIndex(List<Shard> shards, Partitioning partitioning, long timeoutMillis, long operationTimeoutMillis) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A sharded index needs at least one shard");
+        }
+        this.shards = new ArrayList<>(shards);
+        this.partitioning = partitioning;
+        this.timeoutMillis = timeoutMillis;
+        this.operationTimeoutMillis = operationTimeoutMillis;
+        int threads = shards.size() * THREADS_PER_SHARD;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_CALLS_PER_THREAD), runnable -> {
+            Thread thread = new Thread(runnable, "shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void insert(String word, int frequency) {
+        Shard shard = shardFor(word);
+        callWithDeadline(shard, () -> {
+            shard.insert(word, frequency);
+            return null;
+        }, "Insert of '" + word + "'");
+    }
+
+    @Override
+    public boolean delete(String word) {
+        Shard shard = shardFor(word);
+        return callWithDeadline(shard, () -> shard.delete(word), "Delete of '" + word + "'");
+    }
+
+    @Override
+    public int getFrequency(String word) {
+        Shard shard = shardFor(word);
+        return callWithDeadline(shard, () -> shard.getFrequency(word), "Frequency lookup of '" + word + "'");
+    }
+
+    /// Lists one shard at a time. The words are collected on the pool and handed to `action` on the calling thread.
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        for (Shard shard : shards) {
+            List<WordFrequency> words = callWithDeadline(shard, () -> {
+                List<WordFrequency> collected = new ArrayList<>();
+                shard.forEachWord((word, frequency) -> collected.add(new WordFrequency(word, frequency)));
+                return collected;
+            }, "Listing the words of a shard");
+            for (WordFrequency entry : words) {
+                action.accept(entry.getWord(), entry.getFrequency());
+            }
+        }
+    }
+
+    @Override
+    public List<String> getSuggestions(String prefix, int limit) {
+        List<String> suggestions = new ArrayList<>();
+        for (WordFrequency result : topK(prefix, limit)) {
+            suggestions.add(result.getWord());
+        }
+        return suggestions;
+    }
+
+    /// Fans the query out to the shards that may contain matches and merges their answers with a heap bounded to
+    /// `limit` entries. Shards that miss the timeout or fail are skipped.
+    public List<WordFrequency> topK(String prefix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        List<Shard> targets = partitioning == Partitioning.FIRST_CHARACTER && !prefix.isEmpty()
+                ? List.of(shardFor(prefix)) // Every match starts with the prefix's first letter.
+                : shards;
+        List<Future<List<WordFrequency>>> futures = new ArrayList<>(targets.size());
+        for (Shard shard : targets) {
+            try {
+                futures.add(submit(() -> shard.topK(prefix, limit)));
+            } catch (RejectedExecutionException e) {
+                futures.add(null); // The pool is saturated (shards are hanging); skip this shard.
+            }
+        }
+
+        TopK best = new TopK(limit);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<WordFrequency>> future = futures.get(i);
+            if (future == null) {
+                timedOutShardQueries.incrementAndGet();
+                continue;
+            }
+            List<WordFrequency> shardResults;
+            try {
+                shardResults = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                giveUp(targets.get(i), future);
+                timedOutShardQueries.incrementAndGet();
+                continue;
+            } catch (ExecutionException e) {
+                timedOutShardQueries.incrementAndGet();
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < futures.size(); j++) {
+                    if (futures.get(j) != null) {
+                        giveUp(targets.get(j), futures.get(j));
+                    }
+                }
+                break;
+            }
+
+            for (WordFrequency candidate : shardResults) {
+                best.offer(candidate);
+            }
+        }
+
+        return best.drain();
+    }
+
+    /// Number of shard answers dropped so far because they were too slow or failed.
+    public long getTimedOutShardQueries() {
+        return timedOutShardQueries.get();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+
+    /// Runs one call on `shard` and waits at most the operation timeout for it.
+    private <T> T callWithDeadline(Shard shard, Callable<T> call, String description) {
+        Future<T> future;
+        try {
+            future = submit(call);
+        } catch (RejectedExecutionException e) {
+            throw new ShardException(description + " failed: too many shard calls pending", e);
+        }
+        try {
+            return future.get(operationTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            giveUp(shard, future);
+            throw new ShardException(description + " timed out after " + operationTimeoutMillis + " ms", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause(); // Invalid arguments, for instance.
+            }
+            throw new ShardException(description + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            giveUp(shard, future);
+            Thread.currentThread().interrupt();
+            throw new ShardException(description + " was interrupted", e);
+        }
+    }
+
+    private <T> Future<T> submit(Callable<T> call) {
+        ShardCall<T> task = new ShardCall<>(call);
+        executor.execute(task);
+        return task;
+    }
+
+    /// Cancels a call nobody waits for any more. A call still in the queue just never runs. Interrupting a running
+    /// one does not stop a blocking socket read, so the shard is also told to abort the pool thread's call.
+    private static void giveUp(Shard shard, Future<?> future) {
+        if (future.cancel(true)) {
+            Thread runner = ((ShardCall<?>) future).runner; // Still set while the call is running.
+            if (runner != null) {
+                shard.abort(runner);
+            }
+        }
+    }
+
+    /// A shard call that remembers the pool thread running it, so only a call that actually started is aborted.
+    private static class ShardCall<T> extends FutureTask<T> {
+        volatile Thread runner;
+
+        ShardCall(Callable<T> call) {
+            super(call);
+        }
+
+        @Override
+        public void run() {
+            runner = Thread.currentThread();
+            try {
+                super.run();
+            } finally {
+                runner = null;
+            }
+        }
+    }
+
+    private Shard shardFor(String word) {
+        return shards.get(partitioning.shardOf(word, shards.size()));
+    }
+
+    /// Pairs every suggested word with its frequency so results from different shards can be merged.
+    static List<WordFrequency> withFrequencies(AutocompleteIndex index, List<String> words) {
+        List<WordFrequency> results = new ArrayList<>(words.size());
+        for (String word : words) {
+            results.add(new WordFrequency(word, index.getFrequency(word)));
+        }
+        return results;
+    }
+
+    /// Raised when a shard cannot be reached for an operation that cannot simply be skipped.
+    public static class ShardException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public ShardException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Native memory for the slabs of `OffHeapTernarySearchTree`, freed all at once by `close()`.
+///
+/// Two implementations exist: `ForeignSlabArena`, which allocates the slabs in one `ResourceScope` of the incubating
+/// foreign memory API, so closing the arena releases the native memory immediately; and a fallback on plain direct
+/// buffers, whose memory is only returned once the garbage collector has found the buffers unreachable and their
+/// cleaners have run. `create()` picks the foreign one when the JVM runs with `--add-modules jdk.incubator.foreign`.
+public interface SlabArena extends AutoCloseable {
+    /// A zeroed buffer of `bytes` bytes in native byte order, valid until the arena is closed.
+    ByteBuffer allocate(int bytes);
+
+    /// Frees every slab. Buffers handed out before must not be used afterwards; with the foreign arena, using them
+    /// throws IllegalStateException.
+    @Override
+    void close();
+
+    /// Short name for benchmark output.
+    String getName();
+
+    /// The foreign arena if the foreign memory API is available in this JVM, otherwise direct buffers. Callers that
+    /// care which one they got can check `getName()` or `instanceof SlabArena.Direct`.
+    static SlabArena create() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.foreign").isPresent()) {
+            try {
+                // Loaded reflectively: linking it without the module would fail.
+                return (SlabArena) Class.forName("example.ForeignSlabArena").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Falls back to direct buffers below.
+            }
+        }
+        return new Direct();
+    }
+
+    /// Plain direct buffers. `close()` only drops them; the memory comes back after the next collections.
+    class Direct implements SlabArena {
+        private List<ByteBuffer> slabs = new ArrayList<>();
+
+        @Override
+        public ByteBuffer allocate(int bytes) {
+            ByteBuffer slab = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            slabs.add(slab);
+            return slab;
+        }
+
+        @Override
+        public void close() {
+            slabs = new ArrayList<>();
+        }
+
+        @Override
+        public String getName() {
+            return "direct";
+        }
+    }
+}
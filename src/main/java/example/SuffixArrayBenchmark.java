@@ -0,0 +1,85 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/// Build time, memory and query latency of the infix `SuffixArrayIndex`, next to the prefix-only TST on the same words.
+/// The dictionary is inflated by appending letter suffixes to every CSV word (150 copies is about a million words),
+/// and the queries are random 2 to 5 letter pieces cut from random words.
+///
+/// Usage: SuffixArrayBenchmark [copies] [queries]
+public class SuffixArrayBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 150;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        List<String> words = new ArrayList<>();
+        List<Integer> frequencies = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> {
+            for (int copy = 0; copy < copies; copy++) {
+                words.add(word + OffHeapGcBenchmark.suffix(copy));
+                frequencies.add(frequency);
+            }
+        });
+        System.out.println("Words: " + words.size());
+
+        long heapBefore = usedHeap();
+        long startTime = System.nanoTime();
+        SuffixArrayIndex infixIndex = new SuffixArrayIndex();
+        for (int i = 0; i < words.size(); i++) {
+            infixIndex.insert(words.get(i), frequencies.get(i));
+        }
+        infixIndex.build();
+        long infixLoadTime = System.nanoTime() - startTime;
+        System.out.println("Suffix array: load " + infixLoadTime / 1_000_000 + " ms (of which build "
+                + infixIndex.getBuildNanos() / 1_000_000 + " ms), arrays "
+                + Main.formatMemorySize(infixIndex.getStructureBytes())
+                + ", heap growth " + Main.formatMemorySize(usedHeap() - heapBefore));
+
+        heapBefore = usedHeap();
+        startTime = System.nanoTime();
+        TernarySearchTree prefixIndex = new TernarySearchTree();
+        for (int i = 0; i < words.size(); i++) {
+            prefixIndex.insert(words.get(i), frequencies.get(i));
+        }
+        System.out.println("TST: load " + (System.nanoTime() - startTime) / 1_000_000 + " ms"
+                + ", heap growth " + Main.formatMemorySize(usedHeap() - heapBefore));
+
+        Random random = new Random(5);
+        String[] pieces = new String[queries];
+        for (int i = 0; i < queries; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            int length = Math.min(word.length(), 2 + random.nextInt(4));
+            int start = random.nextInt(word.length() - length + 1);
+            pieces[i] = word.substring(start, start + length);
+        }
+
+        report("Suffix array (infix)", infixIndex, pieces);
+        report("TST (prefix)", prefixIndex, pieces);
+        System.out.println("Example: infix 'gram' -> " + infixIndex.getSuggestions("gram", 5)
+                + ", prefix 'gram' -> " + prefixIndex.getSuggestions("gram", 5));
+    }
+
+    private static void report(String name, AutocompleteIndex index, String[] pieces) {
+        for (String piece : pieces) {
+            index.getSuggestions(piece, 10); // Warm-up.
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        for (String piece : pieces) {
+            long startTime = System.nanoTime();
+            index.getSuggestions(piece, 10);
+            latency.record(System.nanoTime() - startTime);
+        }
+        System.out.println(String.format("%-22s p50 %8d us  p99 %8d us  max %8d us", name,
+                latency.getValueAtPercentile(50) / 1000, latency.getValueAtPercentile(99) / 1000,
+                latency.getMax() / 1000));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc(); // Request garbage collection to get more accurate memory readings
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
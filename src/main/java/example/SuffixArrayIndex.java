@@ -0,0 +1,383 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/// Infix completion: `getSuggestions("gram", k)` returns the most frequent words that contain "gram" anywhere,
+/// so "program" and "grammar" both match.
+///
+/// All words are concatenated into one char array, each followed by a '\0' separator. The suffix array lists every
+/// position inside a word, sorted by the text from there up to the separator, so all suffixes starting with a
+/// pattern form one contiguous range: a binary search finds its start, and the LCP array (length of the common
+/// prefix with the previous suffix) finds its end without comparing any more text. `wordOf` maps every suffix back
+/// to the word it lies in, whose frequency ranks it.
+///
+/// The arrays are built in one go, so the index suits a dictionary that is loaded and then mostly read. Frequency
+/// updates and deletions of known words are applied in place; new words (and enough deletions to be worth
+/// compacting) make the next query rebuild the arrays. Like the other engines, mutations must not run concurrently
+/// with queries. Words cannot contain the separator; an infix containing it matches nothing, and the empty infix
+/// ranks the word table directly instead of walking every suffix.
+public class SuffixArrayIndex implements AutocompleteIndex {
+    private static final char SEPARATOR = '\0';
+    private static final int LCP_CAP = Byte.MAX_VALUE; // LCP values are stored saturated in a byte.
+    private static final int INSERTION_SORT_THRESHOLD = 12;
+
+    // Word table. A word's id is its position; deleted words keep their id until the next build compacts the table.
+    private String[] words = new String[16];
+    private int[] frequencies = new int[16];
+    private int wordCount;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+
+    // Built structure, covering the words that existed at the last build.
+    private char[] text = new char[0];
+    private int[] suffixes = new int[0];
+    private byte[] lcp = new byte[0];
+    private int[] wordOf = new int[0];
+    private volatile boolean stale; // Set when the structure no longer covers every word.
+    private long buildNanos;
+
+    private volatile QueryProbe probe; // Optional metrics hook, see setQueryProbe.
+
+    @Override
+    public void insert(String word, int frequency) {
+        if (word.isEmpty()) return;
+        if (word.indexOf(SEPARATOR) >= 0) {
+            throw new IllegalArgumentException("Words in the infix index cannot contain '\\0'");
+        }
+
+        Integer id = ids.get(word);
+        if (id != null) {
+            frequencies[id] = frequency;
+            if (deleted.get(id)) {
+                deleted.clear(id);
+                deletedCount--;
+            }
+            return;
+        }
+
+        if (wordCount == words.length) {
+            words = Arrays.copyOf(words, wordCount * 2);
+            frequencies = Arrays.copyOf(frequencies, wordCount * 2);
+        }
+        words[wordCount] = word;
+        frequencies[wordCount] = frequency;
+        ids.put(word, wordCount++);
+        stale = true;
+    }
+
+    /// Marks the word as deleted; its suffixes stay in the arrays (and are skipped) until the next rebuild.
+    @Override
+    public boolean delete(String word) {
+        Integer id = ids.get(word);
+        if (id == null || deleted.get(id)) {
+            return false;
+        }
+        deleted.set(id);
+        deletedCount++;
+        if (deletedCount * 4L > wordCount) {
+            stale = true; // A quarter of the arrays is dead weight; compact on the next query.
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> getSuggestions(String infix, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        TopK best = new TopK(limit);
+        int visited = 0;
+        int candidates = 0;
+
+        if (infix.isEmpty()) { // Every word matches: rank the word table, not every suffix of it.
+            for (int id = 0; id < wordCount; id++) {
+                visited++;
+                if (!deleted.get(id)) {
+                    candidates++;
+                    best.offer(words[id], frequencies[id]);
+                }
+            }
+            return report(best, visited, candidates);
+        }
+        if (infix.indexOf(SEPARATOR) >= 0) { // No word contains it.
+            return report(best, visited, candidates);
+        }
+        if (stale) {
+            build();
+        }
+
+        // Binary search for the first suffix that is not smaller than the infix.
+        int low = 0;
+        int high = suffixes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            visited++;
+            if (compareSuffix(suffixes[middle], infix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        if (low < suffixes.length && compareSuffix(suffixes[low], infix) == 0) {
+            for (int i = low; i < suffixes.length; i++) {
+                if (i > low && !continuesMatch(i, infix)) {
+                    break;
+                }
+                visited++;
+                int id = wordOf[i];
+                if (deleted.get(id)) {
+                    continue;
+                }
+                candidates++;
+                offer(best, id);
+            }
+        }
+        return report(best, visited, candidates);
+    }
+
+    private List<String> report(TopK best, int visited, int candidates) {
+        List<String> suggestions = best.drainWords();
+
+        QueryProbe probe = this.probe;
+        if (probe != null) {
+            probe.queryFinished(visited, candidates, suggestions.size());
+        }
+        return suggestions;
+    }
+
+    @Override
+    public void setQueryProbe(QueryProbe probe) {
+        this.probe = probe;
+    }
+
+    @Override
+    public int getFrequency(String word) {
+        Integer id = ids.get(word);
+        return id == null || deleted.get(id) ? 0 : frequencies[id];
+    }
+
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        for (int id = 0; id < wordCount; id++) {
+            if (!deleted.get(id)) {
+                action.accept(words[id], frequencies[id]);
+            }
+        }
+    }
+
+    /// (Re)builds the suffix, LCP and word arrays from the current words, dropping deleted ones.
+    /// Queries call this on demand; calling it right after loading keeps the build out of the first query.
+    public synchronized void build() {
+        if (!stale) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        compactWords();
+
+        int textLength = 0;
+        int suffixCount = 0;
+        for (int id = 0; id < wordCount; id++) {
+            textLength += words[id].length() + 1;
+            suffixCount += words[id].length();
+        }
+
+        char[] text = new char[textLength];
+        int[] wordStarts = new int[wordCount];
+        int[] suffixes = new int[suffixCount];
+        int position = 0;
+        int suffix = 0;
+        for (int id = 0; id < wordCount; id++) {
+            String word = words[id];
+            wordStarts[id] = position;
+            word.getChars(0, word.length(), text, position);
+            for (int i = 0; i < word.length(); i++) {
+                suffixes[suffix++] = position + i;
+            }
+            position += word.length();
+            text[position++] = SEPARATOR;
+        }
+
+        sort(text, suffixes, 0, suffixCount, 0);
+
+        byte[] lcp = new byte[suffixCount];
+        int[] wordOf = new int[suffixCount];
+        for (int i = 0; i < suffixCount; i++) {
+            if (i > 0) {
+                lcp[i] = (byte) commonPrefix(text, suffixes[i - 1], suffixes[i]);
+            }
+            int id = Arrays.binarySearch(wordStarts, suffixes[i]);
+            wordOf[i] = id >= 0 ? id : -id - 2; // The last word starting at or before the suffix.
+        }
+
+        this.text = text;
+        this.suffixes = suffixes;
+        this.lcp = lcp;
+        this.wordOf = wordOf;
+        buildNanos = System.nanoTime() - startTime;
+        stale = false; // Volatile write last, so queries that see it also see the new arrays.
+    }
+
+    /// Number of distinct words stored.
+    public int size() {
+        return wordCount - deletedCount;
+    }
+
+    /// Time the last build took.
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /// Bytes held by the built arrays (text, suffix array, LCP and word mapping), excluding the word table.
+    public long getStructureBytes() {
+        return text.length * 2L + suffixes.length * 4L + lcp.length + wordOf.length * 4L;
+    }
+
+    /// Drops deleted words and renumbers the rest.
+    private void compactWords() {
+        if (deletedCount == 0) {
+            return;
+        }
+        int kept = 0;
+        ids.clear();
+        for (int id = 0; id < wordCount; id++) {
+            if (!deleted.get(id)) {
+                words[kept] = words[id];
+                frequencies[kept] = frequencies[id];
+                ids.put(words[kept], kept);
+                kept++;
+            }
+        }
+        Arrays.fill(words, kept, wordCount, null);
+        wordCount = kept;
+        deleted.clear();
+        deletedCount = 0;
+    }
+
+    /// Offers word `id` unless it is already among the best (it contains the infix more than once).
+    /// A word that was evicted cannot come back, since only stronger words evict and its frequency has not changed.
+    private void offer(TopK best, int id) {
+        if (best.accepts(frequencies[id]) && !best.contains(words[id])) {
+            best.offer(words[id], frequencies[id]);
+        }
+    }
+
+    /// Whether suffix `i` still starts with the infix, given that suffix `i - 1` does.
+    private boolean continuesMatch(int i, String infix) {
+        int common = lcp[i];
+        if (common < LCP_CAP || infix.length() < LCP_CAP) {
+            return common >= infix.length();
+        }
+        return compareSuffix(suffixes[i], infix) == 0; // Saturated: the stored value only says "at least LCP_CAP".
+    }
+
+    /// Compares the suffix at `start` (up to its separator) with `infix`, treating a suffix that starts with
+    /// the infix as equal. The infix must not contain the separator, so the separator (which sorts before any
+    /// letter) ends the comparison at the latest; the text bound is a second guard.
+    private int compareSuffix(int start, String infix) {
+        int length = Math.min(infix.length(), text.length - start);
+        for (int j = 0; j < length; j++) {
+            char c = text[start + j];
+            char p = infix.charAt(j);
+            if (c != p) {
+                return c - p;
+            }
+        }
+        return length < infix.length() ? -1 : 0; // Ran out of text: the suffix is a proper prefix of the infix.
+    }
+
+    /// Length of the common prefix of two suffixes (up to the separator), capped at LCP_CAP.
+    private static int commonPrefix(char[] text, int a, int b) {
+        int length = 0;
+        while (length < LCP_CAP && text[a + length] == text[b + length] && text[a + length] != SEPARATOR) {
+            length++;
+        }
+        return length;
+    }
+
+    /// Multikey quicksort of `suffixes[low, high)`, all of which share their first `depth` characters.
+    /// Partitions three ways on the character at `depth`; the equal part moves on to the next character,
+    /// and stops once that character is the separator (those suffixes are identical).
+    private static void sort(char[] text, int[] suffixes, int low, int high, int depth) {
+        while (high - low > 1) {
+            if (high - low < INSERTION_SORT_THRESHOLD) {
+                insertionSort(text, suffixes, low, high, depth);
+                return;
+            }
+
+            char pivot = medianOfThree(text, suffixes, low, (low + high) >>> 1, high - 1, depth);
+            int less = low;
+            int greater = high - 1;
+            int i = low;
+            while (i <= greater) {
+                char c = text[suffixes[i] + depth];
+                if (c < pivot) {
+                    swap(suffixes, less++, i++);
+                } else if (c > pivot) {
+                    swap(suffixes, i, greater--);
+                } else {
+                    i++;
+                }
+            }
+
+            sort(text, suffixes, low, less, depth);
+            sort(text, suffixes, greater + 1, high, depth);
+            if (pivot == SEPARATOR) {
+                return;
+            }
+            low = less;
+            high = greater + 1;
+            depth++;
+        }
+    }
+
+    private static void insertionSort(char[] text, int[] suffixes, int low, int high, int depth) {
+        for (int i = low + 1; i < high; i++) {
+            int suffix = suffixes[i];
+            int j = i;
+            while (j > low && compareSuffixes(text, suffixes[j - 1], suffix, depth) > 0) {
+                suffixes[j] = suffixes[j - 1];
+                j--;
+            }
+            suffixes[j] = suffix;
+        }
+    }
+
+    private static int compareSuffixes(char[] text, int a, int b, int depth) {
+        while (true) {
+            char ca = text[a + depth];
+            char cb = text[b + depth];
+            if (ca != cb) {
+                return ca - cb;
+            }
+            if (ca == SEPARATOR) {
+                return 0;
+            }
+            depth++;
+        }
+    }
+
+    private static char medianOfThree(char[] text, int[] suffixes, int a, int b, int c, int depth) {
+        char x = text[suffixes[a] + depth];
+        char y = text[suffixes[b] + depth];
+        char z = text[suffixes[c] + depth];
+        if (x < y) {
+            return y < z ? y : (x < z ? z : x);
+        }
+        return x < z ? x : (y < z ? z : y);
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+}
@@ -1,15 +1,27 @@
 package example;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.function.ObjIntConsumer;
 
-public class TernarySearchTree {
+public class TernarySearchTree implements AutocompleteIndex {
     private TSTNode root;
+    private final RankMode rankMode;
+    private volatile QueryProbe probe; // Optional metrics hook, see setQueryProbe.
 
+    public TernarySearchTree() {
+        this(RankMode.EXACT);
+    }
+
+    /// With a compact `rankMode`, nodes store log-scale ranks instead of counts (see RankMode); results are ranked
+    /// by those, and getFrequency/forEachWord report the approximate counts they stand for.
+    public TernarySearchTree(RankMode rankMode) {
+        this.rankMode = rankMode;
+    }
+
+    @Override
     public void insert(String word, int frequency) {
-        root = insert(root, word, 0, frequency); // Index 0 is a default value.
+        root = insert(root, word, 0, rankMode.encode(frequency)); // Index 0 is a default value.
     }
 
     /// Recursive helper for insertion...
@@ -19,7 +31,7 @@ public class TernarySearchTree {
         char c = word.charAt(index); // Retrieves the letter from the word at a specified index.
 
         if (node == null) { // If the current node is not populated, then add the retrieved letter.
-            node = new TSTNode(c);
+            node = rankMode == RankMode.EXACT ? new ExactTSTNode(c) : new CompactTSTNode(c);
         }
 
         if (c < node.data) { // If the current letter is smaller than the node's letter.
@@ -33,119 +45,350 @@ public class TernarySearchTree {
             if (index < word.length() - 1) {
                 node.middle = insert(node.middle, word, index + 1, frequency); // If the word is not finished.
             } else {
-                node.isEndOfWord = true;
-                node.wordFrequency = frequency;
+                node.setEndOfWord(true);
+                node.setWordFrequency(frequency);
             }
         }
+        node.updateMaxFrequency();
         return node;
     }
 
+    /// Removes a word. Nodes left without a word of their own and without a middle branch are unlinked,
+    /// with their left and right neighbours merged back into one binary search tree.
+    @Override
+    public boolean delete(String word) {
+        if (word.isEmpty()) return false;
+        boolean[] found = new boolean[1];
+        root = delete(root, word, 0, found);
+        return found[0];
+    }
+
+    /// Recursive helper for deletion. Returns the (possibly replaced) subtree root.
+    private TSTNode delete(TSTNode node, String word, int index, boolean[] found) {
+        if (node == null) {
+            return null;
+        }
+
+        char c = word.charAt(index);
+        if (c < node.data) {
+            node.left = delete(node.left, word, index, found);
+            node.updateMaxFrequency();
+            return node;
+        } else if (c > node.data) {
+            node.right = delete(node.right, word, index, found);
+            node.updateMaxFrequency();
+            return node;
+        }
+
+        if (index < word.length() - 1) {
+            node.middle = delete(node.middle, word, index + 1, found);
+        } else if (node.isEndOfWord()) {
+            node.setEndOfWord(false);
+            node.setWordFrequency(0);
+            found[0] = true;
+        }
+
+        if (node.isEndOfWord() || node.middle != null) {
+            node.updateMaxFrequency();
+            return node; // Still on the path of some other word.
+        }
+        return removeNode(node);
+    }
+
+    /// Unlinks `node` from its binary search tree level and returns what takes its place.
+    private TSTNode removeNode(TSTNode node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // Two neighbours: the smallest letter of the right side takes the node's place (with its own middle branch).
+        TSTNode parent = node;
+        TSTNode successor = node.right;
+        while (successor.left != null) {
+            parent = successor;
+            successor = successor.left;
+        }
+        if (parent != node) {
+            parent.left = successor.right;
+            successor.right = node.right;
+            updateLeftSpine(successor.right, parent);
+        }
+        successor.left = node.left;
+        successor.updateMaxFrequency();
+        return successor;
+    }
+
+    /// Refreshes the subtree maximum of the nodes from `top` down the left links to `bottom`, bottom-up.
+    /// These are the nodes whose leftmost branch lost the successor in removeNode.
+    private void updateLeftSpine(TSTNode top, TSTNode bottom) {
+        if (top != bottom) {
+            updateLeftSpine(top.left, bottom);
+        }
+        top.updateMaxFrequency();
+    }
+
+    @Override
     public List<String> getSuggestions(String prefix, int limit) {
         List<String> suggestions = new ArrayList<>();
+        int[] counters = new int[2]; // Nodes visited and candidates considered, reported to the probe.
+        if (limit <= 0) {
+            reportQuery(counters, suggestions);
+            return suggestions;
+        }
+
+        TopK best = new TopK(limit);
 
         if (prefix.isEmpty()) { // Error handling for empty prefixes.
-            collectWords(root, "", suggestions, limit);
-            return suggestions;
+            collectWordsWithFrequency(root, new StringBuilder(), best, counters);
+        } else {
+            TSTNode lastNode = searchPrefix(root, prefix, 0, counters);
+            if (lastNode != null) {
+                if (lastNode.isEndOfWord()) { // The prefix itself competes with its completions.
+                    counters[1]++;
+                    best.offer(prefix, lastNode.getWordFrequency());
+                }
+                collectWordsWithFrequency(lastNode.middle, new StringBuilder(prefix), best, counters);
+            }
         }
 
-        TSTNode lastNode = searchPrefix(root, prefix, 0);
+        suggestions.addAll(best.drainWords());
 
-        if (lastNode == null) {
-            return suggestions;
+        reportQuery(counters, suggestions);
+        return suggestions;
+    }
+
+    /// Lazily yields every word starting with `prefix`, most frequent first (ties alphabetically), expanding only
+    /// as much of the tree as the words taken so far require. See `CompletionIterator`.
+    public CompletionIterator<TSTNode> completions(String prefix) {
+        // A node stands for its whole ternary subtree: its left and right neighbours share its path, its middle
+        // branch continues the path with its letter.
+        CompletionIterator<TSTNode> completions = new CompletionIterator<>(TSTNode::getMaxFrequency, (node, path, frontier) -> {
+            String word = path + node.data;
+            if (node.isEndOfWord()) {
+                frontier.addWord(word, node.getWordFrequency());
+            }
+            frontier.addNode(node.left, path);
+            frontier.addNode(node.middle, word);
+            frontier.addNode(node.right, path);
+        });
+
+        if (prefix.isEmpty()) {
+            completions.addNode(root, "");
+        } else {
+            TSTNode lastNode = searchPrefix(root, prefix, 0, null);
+            if (lastNode != null) {
+                if (lastNode.isEndOfWord()) {
+                    completions.addWord(prefix, lastNode.getWordFrequency());
+                }
+                completions.addNode(lastNode.middle, prefix);
+            }
         }
+        return completions;
+    }
 
-        if (lastNode.isEndOfWord) {
-            suggestions.add(prefix);
+    @Override
+    public void setQueryProbe(QueryProbe probe) {
+        this.probe = probe;
+    }
+
+    private void reportQuery(int[] counters, List<String> suggestions) {
+        QueryProbe probe = this.probe;
+        if (probe != null) {
+            probe.queryFinished(counters[0], counters[1], suggestions.size());
         }
+    }
 
-        collectWords(lastNode.middle, prefix, suggestions, limit);
+    @Override
+    public int getFrequency(String word) {
+        TSTNode node = searchPrefix(root, word, 0, null);
+        return node != null && node.isEndOfWord() ? rankMode.decode(node.getWordFrequency()) : 0;
+    }
 
-        System.out.println(suggestions);
-        return suggestions;
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        forEachWord(root, new StringBuilder(), action);
     }
 
+    private void forEachWord(TSTNode node, StringBuilder prefix, ObjIntConsumer<String> action) {
+        if (node == null) {
+            return;
+        }
+        forEachWord(node.left, prefix, action);
+        prefix.append(node.data);
+        if (node.isEndOfWord()) {
+            action.accept(prefix.toString(), rankMode.decode(node.getWordFrequency()));
+        }
+        forEachWord(node.middle, prefix, action);
+        prefix.setLength(prefix.length() - 1);
+        forEachWord(node.right, prefix, action);
+    }
 
     /// Searches for the node with a trace for the appropriate prefix.
-    private TSTNode searchPrefix(TSTNode node, String prefix, int index) {
+    /// If `counters` is given, counters[0] is increased by the number of nodes visited.
+    private TSTNode searchPrefix(TSTNode node, String prefix, int index, int[] counters) {
         if (node == null || prefix.isEmpty()) {
             return null;
         }
+        if (counters != null) {
+            counters[0]++;
+        }
 
         char c = prefix.charAt(index);
 
         if (c < node.data) {
-            return searchPrefix(node.left, prefix, index);
+            return searchPrefix(node.left, prefix, index, counters);
         } else if (c > node.data) {
-            return searchPrefix(node.right, prefix, index);
+            return searchPrefix(node.right, prefix, index, counters);
         } else {
             if (index == prefix.length() - 1) {
                 return node;
             }
-            return searchPrefix(node.middle, prefix, index + 1);
+            return searchPrefix(node.middle, prefix, index + 1, counters);
         }
     }
 
-    private void collectWords(TSTNode node, String prefix, List<String> suggestions, int limit) {
-        if (node == null || suggestions.size() >= limit) {
+    /// Helper recursive function. Offers every word in the subtree to the heap, skipping subtrees whose maximum
+    /// cannot beat the weakest of a full heap.
+    private void collectWordsWithFrequency(TSTNode node, StringBuilder prefix, TopK best, int[] counters) {
+        if (node == null || !best.accepts(node.getMaxFrequency())) {
             return;
         }
 
-        PriorityQueue<WordFrequency> pq = new PriorityQueue<>(Comparator.comparingInt(WordFrequency::getFrequency).reversed());
-
-        collectWordsWithFrequency(node, prefix, pq, limit);
+        counters[0]++;
+        collectWordsWithFrequency(node.left, prefix, best, counters);
 
-        while (!pq.isEmpty() && suggestions.size() < limit) {
-            suggestions.add(pq.poll().getWord());
+        prefix.append(node.data);
+        if (node.isEndOfWord()) {
+            counters[1]++;
+            best.offer(prefix, node.getWordFrequency());
         }
+        collectWordsWithFrequency(node.middle, prefix, best, counters);
+        prefix.setLength(prefix.length() - 1);
+
+        collectWordsWithFrequency(node.right, prefix, best, counters);
     }
 
-    /// Helper recursive function.
-    private void collectWordsWithFrequency(TSTNode node, String prefix, PriorityQueue<WordFrequency> pq, int limit) {
-        if (node == null || pq.size() >= limit) {
-            return;
+    /// Represents a node in the TST...
+    /// The ranking data (end-of-word, the stored frequency and the subtree maximum) lives in the subclasses:
+    /// ExactTSTNode keeps counts, CompactTSTNode keeps RankMode ranks. "Frequency" below means whichever is stored.
+    abstract static class TSTNode {
+        char data; // Stores single characters.
+        TSTNode left, middle, right; // Every node has 3 children.
+
+        TSTNode(char data) {
+            this.data = data;
+            this.left = this.middle = this.right = null;
         }
 
-        collectWordsWithFrequency(node.left, prefix, pq, limit);
+        abstract boolean isEndOfWord();
 
-        String word = prefix + node.data;
-        if (node.isEndOfWord) {
-            pq.offer(new WordFrequency(word, node.wordFrequency));
-        }
+        abstract void setEndOfWord(boolean endOfWord);
+
+        abstract int getWordFrequency();
+
+        abstract void setWordFrequency(int frequency);
+
+        /// Highest frequency of any word in this node's ternary subtree.
+        abstract int getMaxFrequency();
 
-        collectWordsWithFrequency(node.middle, word, pq, limit);
-        collectWordsWithFrequency(node.right, prefix, pq, limit);
+        abstract void setMaxFrequency(int maxFrequency);
+
+        /// Recomputes the subtree maximum from this node's own word and its three children.
+        void updateMaxFrequency() {
+            int max = isEndOfWord() ? getWordFrequency() : Integer.MIN_VALUE;
+            if (left != null) max = Math.max(max, left.getMaxFrequency());
+            if (middle != null) max = Math.max(max, middle.getMaxFrequency());
+            if (right != null) max = Math.max(max, right.getMaxFrequency());
+            setMaxFrequency(max);
+        }
     }
 
-    /// Represents a node in the TST...
-    static class TSTNode {
-        char data; // Stores single characters.
+    /// Node with a full count and a separate end-of-word flag.
+    static class ExactTSTNode extends TSTNode {
         boolean isEndOfWord; // Determines whether the node marks the end of a word.
-        TSTNode left, middle, right; // Every node has 3 children.
         int wordFrequency = 0;
+        int maxFrequency = Integer.MIN_VALUE; // Integer.MIN_VALUE while there is no word in the subtree.
 
-        TSTNode(char data) {
-            this.data = data;
-            this.isEndOfWord = false;
-            this.left = this.middle = this.right = null;
+        ExactTSTNode(char data) {
+            super(data);
+        }
+
+        @Override
+        boolean isEndOfWord() {
+            return isEndOfWord;
+        }
+
+        @Override
+        void setEndOfWord(boolean endOfWord) {
+            isEndOfWord = endOfWord;
+        }
+
+        @Override
+        int getWordFrequency() {
+            return wordFrequency;
+        }
+
+        @Override
+        void setWordFrequency(int frequency) {
+            wordFrequency = frequency;
+        }
+
+        @Override
+        int getMaxFrequency() {
+            return maxFrequency;
+        }
+
+        @Override
+        void setMaxFrequency(int maxFrequency) {
+            this.maxFrequency = maxFrequency;
         }
     }
 
-    /// Represents a word's frequency...
-    static class WordFrequency {
-        private final String word;
-        private final int frequency;
+    /// Node with 16-bit ranks; rank 0 means "not a word", so there is no separate flag.
+    /// Eight bytes smaller than an ExactTSTNode (32 instead of 40 with compressed references).
+    static class CompactTSTNode extends TSTNode {
+        char rank;
+        char maxRank; // 0 while there is no word in the subtree.
+
+        CompactTSTNode(char data) {
+            super(data);
+        }
+
+        @Override
+        boolean isEndOfWord() {
+            return rank != 0;
+        }
+
+        @Override
+        void setEndOfWord(boolean endOfWord) {
+            if (!endOfWord) {
+                rank = 0;
+            } else if (rank == 0) {
+                rank = 1; // Lowest rank until setWordFrequency says otherwise.
+            }
+        }
+
+        @Override
+        int getWordFrequency() {
+            return rank;
+        }
 
-        public WordFrequency(String word, int frequency) {
-            this.word = word;
-            this.frequency = frequency;
+        /// Expects a rank from RankMode.encode (1 to 65535); 0 unmarks the word.
+        @Override
+        void setWordFrequency(int frequency) {
+            rank = (char) frequency;
         }
 
-        public String getWord() {
-            return word;
+        @Override
+        int getMaxFrequency() {
+            return maxRank;
         }
 
-        public int getFrequency() {
-            return frequency;
+        @Override
+        void setMaxFrequency(int maxFrequency) {
+            maxRank = (char) Math.max(0, maxFrequency);
         }
     }
 }
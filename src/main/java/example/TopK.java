@@ -0,0 +1,79 @@
+package example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/// The best `limit` words offered so far, ranked by `WordFrequency.WORST_FIRST`. Shared by every engine's top-K
+/// search. A min-heap keeps the weakest candidate on top so it can be evicted, and a word whose frequency cannot
+/// get in is rejected before its WordFrequency (or its string) is built.
+class TopK {
+    private final int limit;
+    private final PriorityQueue<WordFrequency> heap;
+
+    TopK(int limit) {
+        this.limit = limit;
+        this.heap = new PriorityQueue<>(Math.max(1, limit + 1), WordFrequency.WORST_FIRST);
+    }
+
+    /// True if a word of this frequency could still get in. With a subtree maximum, false means the whole
+    /// subtree can be skipped.
+    boolean accepts(int frequency) {
+        return heap.size() < limit || (limit > 0 && frequency >= heap.peek().getFrequency());
+    }
+
+    void offer(CharSequence word, int frequency) {
+        if (accepts(frequency)) {
+            add(new WordFrequency(word.toString(), frequency));
+        }
+    }
+
+    void offer(WordFrequency candidate) {
+        if (accepts(candidate.getFrequency())) {
+            add(candidate);
+        }
+    }
+
+    private void add(WordFrequency candidate) {
+        if (heap.size() < limit) {
+            heap.offer(candidate);
+        } else if (WordFrequency.WORST_FIRST.compare(candidate, heap.peek()) > 0) {
+            heap.poll();
+            heap.offer(candidate);
+        }
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /// Linear scan, for callers that may offer the same word twice.
+    boolean contains(String word) {
+        for (WordFrequency entry : heap) {
+            if (entry.getWord().equals(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// Empties the heap and returns its words, best first.
+    List<WordFrequency> drain() {
+        List<WordFrequency> ranked = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            ranked.add(heap.poll());
+        }
+        Collections.reverse(ranked); // The heap hands out the weakest word first.
+        return ranked;
+    }
+
+    /// Like `drain`, without the frequencies.
+    List<String> drainWords() {
+        List<String> words = new ArrayList<>(heap.size());
+        for (WordFrequency entry : drain()) {
+            words.add(entry.getWord());
+        }
+        return words;
+    }
+}
@@ -1,49 +1,139 @@
 package example;
 
 import java.util.*;
+import java.util.function.ObjIntConsumer;
 
-public class Trie {
+public class Trie implements AutocompleteIndex {
     private final TrieNode root;
+    private final RankMode rankMode;
+    private volatile QueryProbe probe; // Optional metrics hook, see setQueryProbe.
 
     public Trie() {
-        root = new TrieNode();
+        this(RankMode.EXACT);
     }
 
+    /// With a compact `rankMode`, nodes store log-scale ranks instead of counts (see RankMode); results are ranked
+    /// by those, and getFrequency/forEachWord report the approximate counts they stand for.
+    public Trie(RankMode rankMode) {
+        this.rankMode = rankMode;
+        root = rankMode == RankMode.EXACT ? new ExactTrieNode() : new CompactTrieNode();
+    }
+
+    @Override
     public void insert(String word, int frequency) {
+        TrieNode[] path = new TrieNode[word.length() + 1]; // Nodes along the word, to refresh their subtree maximum.
         TrieNode current = root; // Starts at the root node of Trie
+        path[0] = current;
 
-        for (char c : word.toCharArray()) {
-            current = current.getChildren().computeIfAbsent(c, ch -> new TrieNode()); // Creates a new branch if "c" does not exist
+        for (int i = 0; i < word.length(); i++) {
+            current = current.getOrCreateChild(word.charAt(i)); // Creates a new branch if the letter does not exist
+            path[i + 1] = current;
         }
         current.setEndOfWord(true);
-        current.setWordFrequency(frequency);
+        current.setWordFrequency(rankMode.encode(frequency));
+
+        for (int i = word.length(); i >= 0; i--) {
+            if (!path[i].updateMaxFrequency()) {
+                break; // Unchanged here means unchanged above as well.
+            }
+        }
     }
 
+    /// Removes a word. Nodes that no longer lead to any word are cut off, and child maps that become empty are dropped,
+    /// so a deleted word gives back the memory its own branch used.
+    @Override
+    public boolean delete(String word) {
+        return delete(root, word, 0);
+    }
+
+    /// Recursive helper for deletion. Returns whether the word was found (and removed) below `node`.
+    private boolean delete(TrieNode node, String word, int index) {
+        if (index == word.length()) {
+            if (!node.isEndOfWord()) {
+                return false;
+            }
+            node.setEndOfWord(false);
+            node.setWordFrequency(0);
+            node.updateMaxFrequency();
+            return true;
+        }
+
+        char c = word.charAt(index);
+        TrieNode child = node.getChildren().get(c);
+        if (child == null || !delete(child, word, index + 1)) {
+            return false;
+        }
+        if (!child.isEndOfWord() && child.getChildren().isEmpty()) {
+            node.removeChild(c); // The branch below "c" holds no other word.
+        }
+        node.updateMaxFrequency();
+        return true;
+    }
+
+    @Override
     public List<String> getSuggestions(String prefix, int limit) {
         List<String> suggestions = new ArrayList<>();  // Gets a list of suggestions
         TrieNode prefixNode = findNode(prefix); // Goes to the node with a trace of the appropriate prefix
 
         /// Goes to each branch sourced from the prefix node.
         /// It traverses each branch until it reaches the end.
-        /// Returns the word that has reached the end with their frequency.
-        if (prefixNode != null) {
-            PriorityQueue<WordFrequency> pq = new PriorityQueue<>(
-                    Comparator.comparingInt(WordFrequency::getFrequency).reversed()
-            );
-
-            collectWordsWithFrequency(prefixNode, prefix, pq);
-
-            int count = 0;
-            while (!pq.isEmpty() && count < limit) {
-                suggestions.add(pq.poll().getWord());
-                count++;
-            }
+        /// Keeps the best `limit` words found, ties broken alphabetically.
+        int[] counters = {prefix.length(), 0}; // Nodes visited and candidates considered, reported to the probe.
+        if (prefixNode != null && limit > 0) {
+            TopK best = new TopK(limit);
+            collectWordsWithFrequency(prefixNode, new StringBuilder(prefix), best, counters);
+            suggestions.addAll(best.drainWords());
         }
-        System.out.println(suggestions);
 
+        QueryProbe probe = this.probe;
+        if (probe != null) {
+            probe.queryFinished(counters[0], counters[1], suggestions.size());
+        }
         return suggestions;
     }
 
+    /// Lazily yields every word starting with `prefix`, most frequent first (ties alphabetically), expanding only
+    /// as much of the subtree as the words taken so far require. See `CompletionIterator`.
+    public CompletionIterator<TrieNode> completions(String prefix) {
+        CompletionIterator<TrieNode> completions = new CompletionIterator<>(TrieNode::getMaxFrequency, (node, word, frontier) -> {
+            if (node.isEndOfWord()) {
+                frontier.addWord(word, node.getWordFrequency());
+            }
+            for (Map.Entry<Character, TrieNode> child : node.getChildren().entrySet()) {
+                frontier.addNode(child.getValue(), word + child.getKey());
+            }
+        });
+        completions.addNode(findNode(prefix), prefix);
+        return completions;
+    }
+
+    @Override
+    public void setQueryProbe(QueryProbe probe) {
+        this.probe = probe;
+    }
+
+    @Override
+    public int getFrequency(String word) {
+        TrieNode node = findNode(word);
+        return node != null && node.isEndOfWord() ? rankMode.decode(node.getWordFrequency()) : 0;
+    }
+
+    @Override
+    public void forEachWord(ObjIntConsumer<String> action) {
+        forEachWord(root, new StringBuilder(), action);
+    }
+
+    private void forEachWord(TrieNode node, StringBuilder word, ObjIntConsumer<String> action) {
+        if (node.isEndOfWord()) {
+            action.accept(word.toString(), rankMode.decode(node.getWordFrequency()));
+        }
+        for (Map.Entry<Character, TrieNode> child : node.getChildren().entrySet()) {
+            word.append(child.getKey());
+            forEachWord(child.getValue(), word, action);
+            word.setLength(word.length() - 1);
+        }
+    }
+
     /// Searches for the node with a trace for the appropriate prefix.
     private TrieNode findNode(String prefix) {
         TrieNode current = root;
@@ -61,60 +151,166 @@ public class Trie {
     /// From the getSuggestions function, the input to this function is the series of nodes.
     /// Check each item and check whether they are ends of a word. If not, recursively keep going down, while appending each letter to the prefix.
     /// This slowly builds the word.
-    /// If the end of the word is found, return its frequency.
-    private void collectWordsWithFrequency(TrieNode node, String prefix, PriorityQueue<WordFrequency> pq) {
+    /// If the end of the word is found, offer it to the heap of the best words so far.
+    /// Branches whose subtree maximum cannot beat the weakest of a full heap are skipped.
+    private void collectWordsWithFrequency(TrieNode node, StringBuilder prefix, TopK best, int[] counters) {
+        if (!best.accepts(node.getMaxFrequency())) {
+            return;
+        }
+        counters[0]++;
         if (node.isEndOfWord()) {
-            pq.offer(new WordFrequency(prefix, node.getWordFrequency()));
+            counters[1]++;
+            best.offer(prefix, node.getWordFrequency());
         }
 
-        for (char c : node.getChildren().keySet()) {
-            collectWordsWithFrequency(node.getChildren().get(c), prefix + c, pq);
+        for (Map.Entry<Character, TrieNode> child : node.getChildren().entrySet()) {
+            prefix.append(child.getKey());
+            collectWordsWithFrequency(child.getValue(), prefix, best, counters);
+            prefix.setLength(prefix.length() - 1);
         }
     }
 
     /// Represents a node in the Trie...
-    static class TrieNode {
-        private final Map<Character, TrieNode> children = new HashMap<>(); // Stores child nodes, keyed by characters.
+    /// The ranking data (end-of-word, the stored frequency and the subtree maximum) lives in the subclasses:
+    /// ExactTrieNode keeps counts, CompactTrieNode keeps RankMode ranks. "Frequency" below means whichever is stored.
+    abstract static class TrieNode {
+        private Map<Character, TrieNode> children; // Stores child nodes, keyed by characters. Leaves have no map at all.
+
+        /// Read-only view of the children (empty for a leaf). Use getOrCreateChild/removeChild to change them.
+        public Map<Character, TrieNode> getChildren() {
+            return children == null ? Collections.emptyMap() : children;
+        }
+
+        public TrieNode getOrCreateChild(char c) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            return children.computeIfAbsent(c, ch -> newChild());
+        }
+
+        public void removeChild(char c) {
+            if (children != null) {
+                children.remove(c);
+                if (children.isEmpty()) {
+                    children = null; // Drop the empty map instead of keeping it around.
+                }
+            }
+        }
+
+        /// Creates an empty node of the same kind.
+        protected abstract TrieNode newChild();
+
+        public abstract boolean isEndOfWord();
+
+        public abstract void setEndOfWord(boolean endOfWord);
+
+        public abstract int getWordFrequency();
+
+        public abstract void setWordFrequency(int frequency);
+
+        /// Highest frequency of any word at or below this node.
+        public abstract int getMaxFrequency();
+
+        protected abstract void setMaxFrequency(int maxFrequency);
+
+        /// Recomputes the subtree maximum from this node's own word and its children. Returns whether it changed.
+        public boolean updateMaxFrequency() {
+            int max = isEndOfWord() ? getWordFrequency() : Integer.MIN_VALUE;
+            for (TrieNode child : getChildren().values()) {
+                max = Math.max(max, child.getMaxFrequency());
+            }
+            int previous = getMaxFrequency();
+            setMaxFrequency(max);
+            return getMaxFrequency() != previous;
+        }
+    }
+
+    /// Node with a full count and a separate end-of-word flag.
+    static class ExactTrieNode extends TrieNode {
         private boolean isEndOfWord; // Indicates whether this node marks the end of a word.
         private int wordFrequency = 0; // Stores the frequency of the word ending at this node.
+        private int maxFrequency = Integer.MIN_VALUE; // Integer.MIN_VALUE while there is no word below.
 
-        public Map<Character, TrieNode> getChildren() {
-            return children;
+        @Override
+        protected TrieNode newChild() {
+            return new ExactTrieNode();
         }
 
+        @Override
         public boolean isEndOfWord() {
             return isEndOfWord;
         }
 
+        @Override
         public void setEndOfWord(boolean endOfWord) {
             isEndOfWord = endOfWord;
         }
 
+        @Override
+        public int getWordFrequency() {
+            return wordFrequency;
+        }
+
+        @Override
         public void setWordFrequency(int frequency) {
             this.wordFrequency = frequency;
         }
 
-        public int getWordFrequency() {
-            return wordFrequency;
+        @Override
+        public int getMaxFrequency() {
+            return maxFrequency;
+        }
+
+        @Override
+        protected void setMaxFrequency(int maxFrequency) {
+            this.maxFrequency = maxFrequency;
         }
     }
 
-    /// Represents a word's frequency...
-    static class WordFrequency {
-        private final String word;
-        private final int frequency;
+    /// Node with 16-bit ranks; rank 0 means "not a word", so there is no separate flag.
+    /// Eight bytes smaller than an ExactTrieNode (24 instead of 32 with compressed references).
+    static class CompactTrieNode extends TrieNode {
+        private char rank;
+        private char maxRank; // 0 while there is no word below.
+
+        @Override
+        protected TrieNode newChild() {
+            return new CompactTrieNode();
+        }
+
+        @Override
+        public boolean isEndOfWord() {
+            return rank != 0;
+        }
+
+        @Override
+        public void setEndOfWord(boolean endOfWord) {
+            if (!endOfWord) {
+                rank = 0;
+            } else if (rank == 0) {
+                rank = 1; // Lowest rank until setWordFrequency says otherwise.
+            }
+        }
 
-        public WordFrequency(String word, int frequency) {
-            this.word = word;
-            this.frequency = frequency;
+        @Override
+        public int getWordFrequency() {
+            return rank;
+        }
+
+        /// Expects a rank from RankMode.encode (1 to 65535); 0 unmarks the word.
+        @Override
+        public void setWordFrequency(int frequency) {
+            this.rank = (char) frequency;
         }
 
-        public String getWord() {
-            return word;
+        @Override
+        public int getMaxFrequency() {
+            return maxRank;
         }
 
-        public int getFrequency() {
-            return frequency;
+        @Override
+        protected void setMaxFrequency(int maxFrequency) {
+            this.maxRank = (char) Math.max(0, maxFrequency);
         }
     }
-}
\ No newline at end of file
+}
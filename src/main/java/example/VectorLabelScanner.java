@@ -0,0 +1,36 @@
+package example;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/// `LabelScanner` that loads as many labels as fit in the widest vector register of the machine (16 chars with AVX2)
+/// and compares them all against the letter at once. Runs of fewer than `MIN_VECTOR_LABELS` labels, which most
+/// nodes below the first levels have, are cheaper to loop over.
+///
+/// Needs `--add-modules jdk.incubator.vector` at run time; only `LabelScanner.create()` should instantiate it.
+public class VectorLabelScanner implements LabelScanner {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final int MIN_VECTOR_LABELS = 8;
+
+    private final LabelScanner scalar = LabelScanner.scalar();
+
+    @Override
+    public int indexOf(char[] labels, int from, int to, char c) {
+        if (to - from < MIN_VECTOR_LABELS || SPECIES.length() > LabelScanner.PADDING) {
+            return scalar.indexOf(labels, from, to, c);
+        }
+        // Whole-vector loads may read past `to` into the padding or the next node's labels; hits there are ignored.
+        for (int i = from; i < to; i += SPECIES.length()) {
+            int lane = ShortVector.fromCharArray(SPECIES, labels, i).eq((short) c).firstTrue();
+            if (lane < SPECIES.length()) {
+                return i + lane < to ? i + lane : -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+}
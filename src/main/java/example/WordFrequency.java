@@ -0,0 +1,27 @@
+package example;
+
+import java.util.Comparator;
+
+/// Represents a word's frequency...
+class WordFrequency {
+    /// Orders candidates from weakest to strongest: lower frequency first, ties broken by the alphabetically later word.
+    /// Used by the bounded top-K heaps, which keep the weakest candidate on top so it can be evicted.
+    static final Comparator<WordFrequency> WORST_FIRST = Comparator.comparingInt(WordFrequency::getFrequency)
+            .thenComparing(WordFrequency::getWord, Comparator.reverseOrder());
+
+    private final String word;
+    private final int frequency;
+
+    public WordFrequency(String word, int frequency) {
+        this.word = word;
+        this.frequency = frequency;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    public int getFrequency() {
+        return frequency;
+    }
+}
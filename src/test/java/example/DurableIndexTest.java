@@ -0,0 +1,107 @@
+package example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// Recovery edge cases of `DurableIndex` and `MutationLog`: word lengths around the snapshot and log limits,
+/// mutations the index rejects, and damaged snapshots.
+class DurableIndexTest {
+    private static final int LOG_WORD_LIMIT = (1 << 20) - 5; // MAX_PAYLOAD_BYTES minus the operation and value.
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void longWordsSurviveSnapshots() throws Exception {
+        // DataOutputStream.writeUTF stops at 65,535 bytes; the 'é' word is 80,000 bytes in only 40,000 chars.
+        List<String> words = List.of("x".repeat(65_535), "y".repeat(65_536), "é".repeat(40_000), "z".repeat(LOG_WORD_LIMIT));
+        try (DurableIndex index = open()) {
+            for (int i = 0; i < words.size(); i++) {
+                index.insert(words.get(i), i + 1);
+            }
+            assertThrows(IllegalArgumentException.class, () -> index.insert("w".repeat(LOG_WORD_LIMIT + 1), 9));
+            assertEquals(0, index.getFrequency("w".repeat(LOG_WORD_LIMIT + 1)));
+            index.snapshot();
+        }
+
+        try (DurableIndex index = open()) {
+            assertEquals(0, index.getRecoveredRecords()); // Everything came from the snapshot.
+            for (int i = 0; i < words.size(); i++) {
+                assertEquals(i + 1, index.getFrequency(words.get(i)), "word of " + words.get(i).length() + " chars");
+            }
+        }
+    }
+
+    @Test
+    void mutationsTheIndexRejectsAreNotLogged() throws Exception {
+        AutocompleteIndex picky = new TernarySearchTree() {
+            @Override
+            public void insert(String word, int frequency) {
+                if (word.equals("poison")) {
+                    throw new IllegalArgumentException("rejected");
+                }
+                super.insert(word, frequency);
+            }
+        };
+        try (DurableIndex index = new DurableIndex(directory, picky, false, 0, 0)) {
+            index.insert("good", 1);
+            assertThrows(IllegalArgumentException.class, () -> index.insert("poison", 2));
+            assertThrows(IllegalArgumentException.class, () -> index.increment("poison", 2));
+        }
+
+        try (DurableIndex index = open()) {
+            assertEquals(1, index.getRecoveredRecords());
+            assertEquals(1, index.getFrequency("good"));
+            assertEquals(0, index.getFrequency("poison"));
+        }
+    }
+
+    @Test
+    void damagedNewestSnapshotFallsBackWhileTheLogReachesBack() throws Exception {
+        Path keptSegment = Files.createTempFile(directory, "kept", ".log");
+        try (DurableIndex index = open()) {
+            index.insert("alpha", 1);
+            index.snapshot(); // snapshot-2 covers wal-1.
+            index.insert("beta", 2); // In wal-2.
+            Files.copy(directory.resolve("wal-2.log"), keptSegment, StandardCopyOption.REPLACE_EXISTING);
+            index.snapshot(); // snapshot-3 covers wal-2, which is deleted.
+            index.insert("gamma", 3);
+        }
+        corrupt(directory.resolve("snapshot-3.dat"));
+
+        // wal-2 is gone, so snapshot-2 plus the log would miss "beta": recovery must fail and keep every file.
+        assertThrows(IOException.class, this::open);
+        assertTrue(Files.exists(directory.resolve("snapshot-2.dat")));
+        assertTrue(Files.exists(directory.resolve("snapshot-3.dat")));
+
+        // As if the crash came before the snapshot deleted wal-2: snapshot-2 and the log cover everything.
+        Files.copy(keptSegment, directory.resolve("wal-2.log"));
+        Files.delete(keptSegment);
+        try (DurableIndex index = open()) {
+            assertEquals(2, index.getRecoveredRecords());
+            assertEquals(1, index.getFrequency("alpha"));
+            assertEquals(2, index.getFrequency("beta"));
+            assertEquals(3, index.getFrequency("gamma"));
+        }
+    }
+
+    private DurableIndex open() throws IOException {
+        return new DurableIndex(directory, new OffHeapTernarySearchTree(), false, 0, 0);
+    }
+
+    private static void corrupt(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(file, bytes);
+    }
+}
@@ -0,0 +1,379 @@
+package example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/// Differential tests: every engine is loaded with the same words as a plain map and must give exactly the answers the
+/// map gives when searched by brute force, for random prefixes and limits, before and after random deletions and
+/// frequency updates.
+///
+/// The expected order is the one every engine documents: higher frequency first, ties alphabetically. Engines with a
+/// compact `RankMode` rank by the encoded value, so counts in the same bucket tie. The infix engine is held to the
+/// same rules with "contains" in place of "starts with".
+class EngineDifferentialTest {
+    private static final String ALPHABET = "abcdeabcdeabcdefz-é"; // Few letters so words share long prefixes.
+    private static final int[] LIMITS = {1, 3, 10, 50};
+    private static final int SEEDS = 25;
+
+    @TempDir
+    Path directory;
+
+    /// One engine configuration under test.
+    static class Engine {
+        final String name;
+        final Function<Path, AutocompleteIndex> factory; // Gets a fresh directory, for engines that persist.
+        final RankMode rankMode;
+        final BiPredicate<String, String> matches; // (word, query)
+
+        Engine(String name, Function<Path, AutocompleteIndex> factory, RankMode rankMode, BiPredicate<String, String> matches) {
+            this.name = name;
+            this.factory = factory;
+            this.rankMode = rankMode;
+            this.matches = matches;
+        }
+
+        static Engine prefix(String name, Function<Path, AutocompleteIndex> factory) {
+            return new Engine(name, factory, RankMode.EXACT, String::startsWith);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static Stream<Engine> engines() {
+        return Stream.of(
+                Engine.prefix("trie", directory -> new Trie()),
+                Engine.prefix("tst", directory -> new TernarySearchTree()),
+                Engine.prefix("offheap", directory -> new OffHeapTernarySearchTree()),
+                Engine.prefix("offheap-direct", directory -> new OffHeapTernarySearchTree(new SlabArena.Direct())),
+                Engine.prefix("hybrid", directory -> new HybridIndex()),
+                Engine.prefix("hybrid-depth-2", directory -> new HybridIndex(2)),
+                Engine.prefix("packed", directory -> new PackedTrie()),
+                Engine.prefix("packed-scalar", directory -> new PackedTrie(LabelScanner.scalar())),
+                Engine.prefix("multi-dictionary", directory -> new MultiDictionaryIndex().view("only")),
+                Engine.prefix("sharded-hash", directory -> sharded(ShardedIndex.Partitioning.HASH)),
+                Engine.prefix("sharded-first-character", directory -> sharded(ShardedIndex.Partitioning.FIRST_CHARACTER)),
+                Engine.prefix("durable", directory -> durable(directory)),
+                Engine.prefix("metered", directory -> new MeteredIndex("differential-test", new TernarySearchTree())),
+                new Engine("trie-log16", directory -> new Trie(RankMode.LOG16), RankMode.LOG16, String::startsWith),
+                new Engine("trie-log8", directory -> new Trie(RankMode.LOG8), RankMode.LOG8, String::startsWith),
+                new Engine("tst-log16", directory -> new TernarySearchTree(RankMode.LOG16), RankMode.LOG16, String::startsWith),
+                new Engine("tst-log8", directory -> new TernarySearchTree(RankMode.LOG8), RankMode.LOG8, String::startsWith),
+                new Engine("infix", directory -> new SuffixArrayIndex(), RankMode.EXACT, String::contains));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("engines")
+    void randomDictionariesMatchReference(Engine engine) throws Exception {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            Map<String, Integer> reference = new HashMap<>();
+            AutocompleteIndex index = engine.factory.apply(Files.createTempDirectory(directory, "seed"));
+            try {
+                int wordCount = 1 + random.nextInt(400);
+                for (int i = 0; i < wordCount; i++) {
+                    insert(index, reference, randomWord(random), 1 + random.nextInt(40)); // Narrow range: many ties.
+                }
+                checkQueries(engine, index, reference, random, engine + " seed " + seed);
+
+                // Delete about a third, update some frequencies (up and down) and add a few new words.
+                List<String> words = new ArrayList<>(reference.keySet());
+                words.sort(null);
+                for (String word : words) {
+                    int action = random.nextInt(6);
+                    if (action < 2) {
+                        assertEquals(true, index.delete(word), engine + " seed " + seed + ": delete " + word);
+                        reference.remove(word);
+                    } else if (action == 2) {
+                        insert(index, reference, word, 1 + random.nextInt(40));
+                    }
+                }
+                assertEquals(false, index.delete("absent-word"), engine + " seed " + seed + ": delete of a missing word");
+                for (int i = 0; i < wordCount / 10; i++) {
+                    insert(index, reference, randomWord(random), 1 + random.nextInt(40));
+                }
+                checkQueries(engine, index, reference, random, engine + " seed " + seed + " after mutations");
+            } finally {
+                close(index);
+            }
+        }
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("engines")
+    void csvDictionaryMatchesReference(Engine engine) throws Exception {
+        Map<String, Integer> reference = new HashMap<>();
+        AutocompleteIndex index = engine.factory.apply(directory);
+        try {
+            Main.loadDictionary("filtered_words.csv", (word, frequency) -> insert(index, reference, word, frequency));
+            List<String> words = new ArrayList<>(reference.keySet());
+            words.sort(null);
+            Random random = new Random(7);
+            for (int i = 0; i < 300; i++) {
+                String word = words.get(random.nextInt(words.size()));
+                String query = word.substring(0, 1 + random.nextInt(Math.min(4, word.length())));
+                checkQuery(engine, index, reference, query, 10, engine + " csv");
+            }
+            checkQuery(engine, index, reference, "", 10, engine + " csv");
+            checkContents(engine, index, reference, engine + " csv");
+        } finally {
+            close(index);
+        }
+    }
+
+    /// The lazy iterators must page through the same order the eager queries use.
+    @Test
+    void lazyCompletionsMatchReference() {
+        for (RankMode rankMode : RankMode.values()) {
+            for (int seed = 0; seed < SEEDS; seed++) {
+                Random random = new Random(seed);
+                Trie trie = new Trie(rankMode);
+                TernarySearchTree tst = new TernarySearchTree(rankMode);
+                Map<String, Integer> reference = new HashMap<>();
+                for (int i = 0, count = 1 + random.nextInt(300); i < count; i++) {
+                    String word = randomWord(random);
+                    int frequency = 1 + random.nextInt(40);
+                    trie.insert(word, frequency);
+                    tst.insert(word, frequency);
+                    reference.put(word, frequency);
+                }
+                Engine engine = new Engine(rankMode.name(), directory -> null, rankMode, String::startsWith);
+                for (int i = 0; i < 50; i++) {
+                    String prefix = randomPrefix(random, reference);
+                    List<String> expected = expected(engine, reference, prefix, Integer.MAX_VALUE);
+                    String context = rankMode + " seed " + seed + " prefix '" + prefix + "'";
+
+                    CompletionIterator<Trie.TrieNode> trieCompletions = trie.completions(prefix);
+                    List<String> pages = new ArrayList<>(trieCompletions.next(3));
+                    trieCompletions.stream().forEach(pages::add); // The rest, after a first page.
+                    assertEquals(expected, pages, "trie completions, " + context);
+                    assertEquals(expected, tst.completions(prefix).stream().collect(Collectors.toList()), "tst completions, " + context);
+                }
+            }
+        }
+    }
+
+    /// The durable engine answers the same after a restart, also when the crash tore its last log record: the
+    /// snapshot and the intact records bring back everything but that record.
+    @Test
+    void durableIndexRecoversAfterATornLogTail() throws Exception {
+        Engine engine = Engine.prefix("durable", EngineDifferentialTest::durable);
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            Path seedDirectory = Files.createTempDirectory(directory, "seed");
+            Map<String, Integer> reference = new HashMap<>();
+            Map<String, Integer> beforeLastRecord;
+            long loggedAfterSnapshot = 0;
+            try (DurableIndex index = durable(seedDirectory)) {
+                int wordCount = 1 + random.nextInt(400);
+                for (int i = 0; i < wordCount; i++) {
+                    insert(index, reference, randomWord(random), 1 + random.nextInt(40));
+                }
+                index.snapshot();
+
+                List<String> words = new ArrayList<>(reference.keySet());
+                words.sort(null);
+                for (String word : words) {
+                    int action = random.nextInt(6);
+                    if (action < 2) {
+                        index.delete(word);
+                        reference.remove(word);
+                        loggedAfterSnapshot++;
+                    } else if (action == 2) {
+                        insert(index, reference, word, 1 + random.nextInt(40));
+                        loggedAfterSnapshot++;
+                    }
+                }
+                beforeLastRecord = new HashMap<>(reference);
+                String lastWord;
+                do {
+                    lastWord = randomWord(random);
+                } while (reference.containsKey(lastWord));
+                insert(index, reference, lastWord, 1 + random.nextInt(40));
+                loggedAfterSnapshot++;
+            }
+            truncateNewestLogSegment(seedDirectory, 1 + random.nextInt(4));
+
+            try (DurableIndex index = durable(seedDirectory)) {
+                String context = "durable seed " + seed + " reopened";
+                assertEquals(loggedAfterSnapshot - 1, index.getRecoveredRecords(), context + ": recovered records");
+                checkQueries(engine, index, beforeLastRecord, random, context);
+            }
+        }
+    }
+
+    /// A view over several dictionaries ranks words by their summed frequency.
+    @Test
+    void multiDictionaryViewsRankBySummedFrequency() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed);
+            MultiDictionaryIndex index = new MultiDictionaryIndex();
+            String[] names = {"en", "fr", "medical"};
+            Map<String, Integer> summed = new HashMap<>(); // Over "en" and "medical".
+            for (int i = 0, count = 1 + random.nextInt(300); i < count; i++) {
+                String name = names[random.nextInt(names.length)];
+                String word = randomWord(random);
+                int frequency = 1 + random.nextInt(40);
+                int previous = index.view(name).getFrequency(word);
+                index.view(name).insert(word, frequency);
+                if (!name.equals("fr")) {
+                    summed.merge(word, frequency - previous, Integer::sum);
+                }
+            }
+            summed.values().removeIf(frequency -> frequency == 0);
+
+            AutocompleteIndex view = index.view("en", "medical");
+            Engine engine = Engine.prefix("en+medical", directory -> view);
+            checkQueries(engine, view, summed, random, "multi-dictionary seed " + seed);
+        }
+    }
+
+    /// Dictionary ids past the 64 mask bits are refused instead of wrapping around onto another dictionary.
+    @Test
+    void multiDictionaryIdsOutOfRangeAreRefused() {
+        MultiDictionaryIndex index = new MultiDictionaryIndex();
+        index.insert(0, "apple", 3);
+        for (int dictionary : new int[]{-1, MultiDictionaryIndex.MAX_DICTIONARIES, 65}) {
+            assertThrows(IllegalArgumentException.class, () -> index.insert(dictionary, "apple", 7));
+            assertThrows(IllegalArgumentException.class, () -> index.delete(dictionary, "apple"));
+        }
+        assertEquals(3, index.getFrequency(1L, "apple"));
+    }
+
+    private static void insert(AutocompleteIndex index, Map<String, Integer> reference, String word, int frequency) {
+        index.insert(word, frequency);
+        reference.put(word, frequency);
+    }
+
+    private static void checkQueries(Engine engine, AutocompleteIndex index, Map<String, Integer> reference, Random random,
+                                     String context) {
+        checkContents(engine, index, reference, context);
+        for (int limit : LIMITS) {
+            checkQuery(engine, index, reference, "", limit, context);
+        }
+        for (int i = 0; i < 60; i++) {
+            checkQuery(engine, index, reference, randomPrefix(random, reference), LIMITS[random.nextInt(LIMITS.length)], context);
+        }
+    }
+
+    private static void checkQuery(Engine engine, AutocompleteIndex index, Map<String, Integer> reference, String query,
+                                   int limit, String context) {
+        assertEquals(expected(engine, reference, query, limit), index.getSuggestions(query, limit),
+                context + ": getSuggestions(\"" + query + "\", " + limit + ")");
+    }
+
+    /// Every word with its (decoded) frequency, and nothing else.
+    private static void checkContents(Engine engine, AutocompleteIndex index, Map<String, Integer> reference, String context) {
+        Map<String, Integer> expected = new HashMap<>();
+        reference.forEach((word, frequency) -> expected.put(word, engine.rankMode.decode(engine.rankMode.encode(frequency))));
+
+        Map<String, Integer> actual = new HashMap<>();
+        index.forEachWord(actual::put);
+        assertEquals(expected, actual, context + ": forEachWord");
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), index.getFrequency(entry.getKey()), context + ": getFrequency(\"" + entry.getKey() + "\")");
+        }
+        assertEquals(0, index.getFrequency("absent-word"), context + ": getFrequency of a missing word");
+    }
+
+    /// Brute force: every matching word, ranked by encoded frequency (descending) and then alphabetically.
+    private static List<String> expected(Engine engine, Map<String, Integer> reference, String query, int limit) {
+        return reference.entrySet().stream()
+                .filter(entry -> engine.matches.test(entry.getKey(), query))
+                .sorted(Comparator.comparingInt((Map.Entry<String, Integer> entry) -> engine.rankMode.encode(entry.getValue()))
+                        .reversed()
+                        .thenComparing(Map.Entry::getKey))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static String randomWord(Random random) {
+        int length = 1 + random.nextInt(7);
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            word.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return word.toString();
+    }
+
+    /// Mostly prefixes (or infixes) of stored words, sometimes whole words or random text that may match nothing.
+    private static String randomPrefix(Random random, Map<String, Integer> reference) {
+        if (reference.isEmpty() || random.nextInt(5) == 0) {
+            String word = randomWord(random);
+            return word.substring(0, 1 + random.nextInt(Math.min(2, word.length())));
+        }
+        List<String> words = new ArrayList<>(reference.keySet());
+        words.sort(null);
+        String word = words.get(random.nextInt(words.size()));
+        int start = random.nextInt(3) == 0 ? random.nextInt(word.length()) : 0;
+        return word.substring(start, start + random.nextInt(word.length() - start + 1));
+    }
+
+    private static void close(AutocompleteIndex index) throws Exception {
+        if (index instanceof Closeable) {
+            ((Closeable) index).close();
+        }
+    }
+
+    private static ShardedIndex sharded(ShardedIndex.Partitioning partitioning) {
+        List<ShardedIndex.Shard> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            shards.add(new ShardedIndex.LocalShard(new TernarySearchTree()));
+        }
+        return new ShardedIndex(shards, partitioning, 10_000);
+    }
+
+    /// Cuts `bytes` off the end of the highest-numbered `wal-<n>.log` in `directory`, as a crash mid-write would.
+    private static void truncateNewestLogSegment(Path directory, int bytes) throws IOException {
+        Path newest = null;
+        long newestSegment = -1;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("wal-") && name.endsWith(".log")) {
+                    long segment = Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length()));
+                    if (segment > newestSegment) {
+                        newest = file;
+                        newestSegment = segment;
+                    }
+                }
+            }
+        }
+        try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+
+    private static DurableIndex durable(Path directory) {
+        try {
+            return new DurableIndex(directory, new Trie(), false, 0, 0);
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+}
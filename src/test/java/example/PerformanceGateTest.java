@@ -0,0 +1,267 @@
+package example;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.Reference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/// Performance regression gate, run with `mvn -B test -Pperf` (excluded from the default test run).
+///
+/// Loads the CSV, inflated by letter suffixes, into every engine and measures its query latency and retained memory:
+/// the prefix engines, the infix engine (queried with the same prefixes, which it matches anywhere in a word) and a
+/// single-dictionary view of `MultiDictionaryIndex`. `ShardedIndex` is left out: its shards answer on pool threads,
+/// whose work the CPU time of the measuring thread does not see, and each shard is a `TernarySearchTree` the gate
+/// already covers (`ShardedDemo` times the fan-out). `DurableIndex` and `MeteredIndex` only wrap another engine,
+/// adding a read lock or a timer around its queries.
+///
+/// Every engine is measured in `perf.forks` fresh JVMs (default 3) and the gate uses the median fork, so the JIT
+/// profile of one engine (or of the engines measured before it) cannot slow down another, and one disturbed fork
+/// does not fail the build.
+///
+/// Latency is gated relative to a fixed reference workload (sorting the query prefixes) timed in alternating rounds
+/// in the same JVM: a busier or slower machine stretches both, so their ratio stays put while absolute timings on a
+/// shared machine swing by half. Both are CPU time of the measuring thread, the median of several rounds. Memory is
+/// the heap growth from building the engine plus its off-heap bytes, read as the smallest used heap over several
+/// full collections (one collection can leave dead objects behind, see `Main.usedHeap`).
+///
+/// The gate fails when an engine's latency ratio grows by more than `perf.latencyTolerance` (default 0.30) or its
+/// memory by more than `perf.memoryTolerance` (default 0.10). Baselines are machine specific: record them on the
+/// machine that runs the gate with `mvn -B test -Pperf -Dperf.updateBaseline=true`, which rewrites
+/// `src/test/resources/perf-baseline.properties`.
+@Tag("perf")
+class PerformanceGateTest {
+    private static final Path BASELINE = Paths.get("src/test/resources/perf-baseline.properties");
+    private static final String[] ENGINES = {"trie", "tst", "offheap", "hybrid", "packed", "infix", "multi"};
+    private static final int COPIES = 30;
+    private static final int QUERIES = 10_000;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int ROUNDS = 7;
+    private static final int REFERENCE_SORTS = 20; // Sorts per reference round.
+    private static final int LIMIT = 10;
+    private static final String RESULT = "RESULT ";
+
+    @Test
+    void latencyAndMemoryStayWithinBaseline() throws Exception {
+        int forks = Integer.getInteger("perf.forks", 3);
+        TreeMap<String, Double> measured = new TreeMap<>();
+        for (String engine : ENGINES) {
+            double[] latencyRatios = new double[forks];
+            double[] nanosPerQuery = new double[forks];
+            double[] retainedBytes = new double[forks];
+            for (int fork = 0; fork < forks; fork++) {
+                double[] result = fork(engine);
+                nanosPerQuery[fork] = result[0];
+                latencyRatios[fork] = result[1];
+                retainedBytes[fork] = result[2];
+            }
+            measured.put(engine + ".latencyRatio", median(latencyRatios));
+            measured.put(engine + ".retainedBytes", median(retainedBytes));
+            System.out.println(String.format(Locale.ROOT, "%-8s %,8.0f ns/query  latency ratio %.3f (forks %s)  %s",
+                    engine, median(nanosPerQuery), median(latencyRatios), format(latencyRatios),
+                    Main.formatMemorySize((long) median(retainedBytes))));
+        }
+
+        if (Boolean.getBoolean("perf.updateBaseline")) {
+            writeBaseline(measured);
+            System.out.println("Baseline written to " + BASELINE.toAbsolutePath());
+            return;
+        }
+
+        assertTrue(Files.exists(BASELINE), "No baseline at " + BASELINE + "; record one with -Dperf.updateBaseline=true");
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(BASELINE)) {
+            baseline.load(reader);
+        }
+        double latencyTolerance = Double.parseDouble(System.getProperty("perf.latencyTolerance", "0.30"));
+        double memoryTolerance = Double.parseDouble(System.getProperty("perf.memoryTolerance", "0.10"));
+
+        List<String> regressions = new ArrayList<>();
+        measured.forEach((key, value) -> {
+            String stored = baseline.getProperty(key);
+            if (stored == null) {
+                regressions.add(key + ": no baseline value");
+                return;
+            }
+            double expected = Double.parseDouble(stored.trim());
+            double tolerance = key.endsWith(".latencyRatio") ? latencyTolerance : memoryTolerance;
+            if (value > expected * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: %,.3f against a baseline of %,.3f (+%.0f%%, allowed +%.0f%%)",
+                        key, value, expected, (value / expected - 1) * 100, tolerance * 100));
+            }
+        });
+        if (!regressions.isEmpty()) {
+            fail("Performance regressed:\n  " + String.join("\n  ", regressions));
+        }
+    }
+
+    /// Measures one engine in a new JVM with this JVM's class path and options.
+    /// Returns {nanoseconds per query, latency ratio, retained bytes}.
+    private static double[] fork(String engine) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith("-agentlib") && !option.startsWith("-javaagent")) { // No debugger or coverage agent.
+                command.add(option);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PerformanceGateTest.class.getName());
+        command.add(engine);
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String result = null;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(RESULT)) {
+                    result = line.substring(RESULT.length());
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        assertEquals(0, exitCode, "Measuring " + engine + " failed:\n" + output);
+        assertTrue(result != null, "Measuring " + engine + " printed no result:\n" + output);
+
+        String[] fields = result.trim().split(" ");
+        double[] values = new double[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = Double.parseDouble(fields[i]);
+        }
+        return values;
+    }
+
+    /// Forked side of the gate: measures the engine named by the only argument and prints one RESULT line.
+    public static void main(String[] args) throws Exception {
+        String engine = args[0];
+        List<String> words = new ArrayList<>();
+        List<Integer> frequencies = new ArrayList<>();
+        Main.loadDictionary("filtered_words.csv", (word, frequency) -> {
+            for (int copy = 0; copy < COPIES; copy++) {
+                words.add(word + OffHeapGcBenchmark.suffix(copy));
+                frequencies.add(frequency);
+            }
+        });
+        Random random = new Random(42);
+        String[] prefixes = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            prefixes[i] = word.substring(0, 1 + random.nextInt(Math.min(3, word.length())));
+        }
+
+        long heapBefore = Main.usedHeap();
+        AutocompleteIndex index = build(engine, words, frequencies);
+        long retained = Main.usedHeap() - heapBefore;
+        Reference.reachabilityFence(index); // Otherwise the JIT may let the index be collected before the reading.
+        if (index instanceof OffHeapTernarySearchTree) {
+            retained += ((OffHeapTernarySearchTree) index).getOffHeapBytes();
+        }
+
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            runReference(prefixes);
+            runQueries(index, prefixes);
+        }
+        double[] nanosPerQuery = new double[ROUNDS];
+        double[] ratios = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            long reference = runReference(prefixes);
+            long queries = runQueries(index, prefixes);
+            nanosPerQuery[round] = (double) queries / prefixes.length;
+            ratios[round] = (double) queries / reference;
+        }
+        System.out.println(String.format(Locale.ROOT, "%s%.1f %.4f %d", RESULT, median(nanosPerQuery), median(ratios), retained));
+    }
+
+    private static AutocompleteIndex build(String engine, List<String> words, List<Integer> frequencies) {
+        AutocompleteIndex index = engine.equals("multi") ? new MultiDictionaryIndex().view("gate") : Main.createIndex(engine);
+        for (int i = 0; i < words.size(); i++) {
+            index.insert(words.get(i), frequencies.get(i));
+        }
+        index.getSuggestions("a", LIMIT); // Lets the packed and infix engines build before the reading.
+        return index;
+    }
+
+    /// CPU nanoseconds this thread spent on one pass over the prefixes. CPU time rather than wall time, so time the
+    /// thread spends waiting for the processor (behind compiler or GC threads on a small machine) does not count.
+    private static long runQueries(AutocompleteIndex index, String[] prefixes) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long startTime = threads.getCurrentThreadCpuTime();
+        int results = 0;
+        for (String prefix : prefixes) {
+            results += index.getSuggestions(prefix, LIMIT).size();
+        }
+        long elapsed = threads.getCurrentThreadCpuTime() - startTime;
+        assertTrue(results > 0); // Keeps the loop from being optimized away.
+        return elapsed;
+    }
+
+    /// CPU nanoseconds spent sorting copies of the prefixes: string comparisons and scattered loads, like a lookup,
+    /// but the same amount of work whatever the engines do.
+    private static long runReference(String[] prefixes) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long startTime = threads.getCurrentThreadCpuTime();
+        int checksum = 0;
+        for (int sort = 0; sort < REFERENCE_SORTS; sort++) {
+            String[] sorted = prefixes.clone();
+            Arrays.sort(sorted);
+            checksum += sorted[sort].length();
+        }
+        long elapsed = threads.getCurrentThreadCpuTime() - startTime;
+        assertTrue(checksum > 0); // Keeps the sorts from being optimized away.
+        return elapsed;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    private static String format(double[] values) {
+        StringBuilder text = new StringBuilder();
+        for (double value : values) {
+            text.append(text.length() == 0 ? "" : " ").append(String.format(Locale.ROOT, "%.3f", value));
+        }
+        return text.toString();
+    }
+
+    private static void writeBaseline(TreeMap<String, Double> measured) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(BASELINE)) {
+            writer.write("# Performance gate baseline, see PerformanceGateTest. Regenerate with:\n");
+            writer.write("#   mvn -B test -Pperf -Dperf.updateBaseline=true\n");
+            for (var entry : measured.entrySet()) {
+                String value = entry.getKey().endsWith(".latencyRatio")
+                        ? String.format(Locale.ROOT, "%.4f", entry.getValue())
+                        : String.valueOf(Math.round(entry.getValue()));
+                writer.write(entry.getKey() + "=" + value + "\n");
+            }
+        }
+    }
+}
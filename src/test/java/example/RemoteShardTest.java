@@ -0,0 +1,149 @@
+package example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// `RemoteShard` against a `ShardServer` on a loopback socket in this JVM: deadlines, `abort` and errors reported by
+/// the server, as seen through `ShardedIndex`.
+class RemoteShardTest {
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    @AfterEach
+    void closeResources() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void slowShardIsDroppedAndAbortedAtTheDeadline() throws Exception {
+        // The read timeout is far beyond the delay, so only abort() can free the pool thread in time.
+        RemoteShard shard = connect(new ShardServer(dictionary(), 2_000), 60_000);
+        ShardedIndex sharded = own(new ShardedIndex(List.of(shard), ShardedIndex.Partitioning.HASH, 100, 500));
+
+        long startTime = System.nanoTime();
+        assertEquals(List.of(), sharded.getSuggestions("ap", 5));
+        assertEquals(1, sharded.getTimedOutShardQueries());
+
+        // Deletes are not delayed: this only gets through if the aborted query let go of the connection.
+        assertTrue(sharded.delete("apricot"));
+        assertTrue(millisSince(startTime) < 1_500, "took " + millisSince(startTime) + " ms");
+
+        ShardedIndex.ShardException timedOut = assertThrows(ShardedIndex.ShardException.class,
+                () -> sharded.getFrequency("apple"));
+        assertTrue(timedOut.getMessage().contains("timed out"), timedOut.getMessage());
+    }
+
+    @Test
+    void abortOnlyClosesTheCallersOwnRequest() throws Exception {
+        RemoteShard shard = connect(new ShardServer(dictionary(), 1_000), 60_000);
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        resources.add(caller::shutdownNow);
+        AtomicReference<Thread> callerThread = new AtomicReference<>();
+
+        // Aborting a thread that has no request on the connection leaves the running request alone.
+        Future<List<WordFrequency>> untouched = caller.submit(() -> {
+            callerThread.set(Thread.currentThread());
+            return shard.topK("ap", 5);
+        });
+        Thread.sleep(200);
+        shard.abort(Thread.currentThread());
+        assertEquals(List.of("apple", "apricot"), words(untouched.get(10, TimeUnit.SECONDS)));
+
+        // Aborting the thread whose request it is fails that request right away.
+        Future<List<WordFrequency>> aborted = caller.submit(() -> shard.topK("ap", 5));
+        Thread.sleep(200);
+        long startTime = System.nanoTime();
+        shard.abort(callerThread.get());
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> aborted.get(10, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof IOException, String.valueOf(failure.getCause()));
+        assertTrue(millisSince(startTime) < 500, "took " + millisSince(startTime) + " ms");
+
+        // The next request reconnects.
+        assertTrue(shard.delete("apple"));
+        assertEquals(0, shard.getFrequency("apple"));
+    }
+
+    @Test
+    void remoteErrorsBecomeShardExceptions() throws Exception {
+        AutocompleteIndex strict = new TernarySearchTree() {
+            @Override
+            public void insert(String word, int frequency) {
+                if (frequency < 0) {
+                    throw new IllegalArgumentException("negative frequency");
+                }
+                super.insert(word, frequency);
+            }
+        };
+        RemoteShard shard = connect(new ShardServer(strict, 0), RemoteShard.DEFAULT_READ_TIMEOUT_MILLIS);
+        ShardedIndex sharded = own(new ShardedIndex(List.of(shard), ShardedIndex.Partitioning.HASH, 1_000));
+
+        ShardedIndex.ShardException rejected = assertThrows(ShardedIndex.ShardException.class,
+                () -> sharded.insert("apple", -1));
+        assertTrue(rejected.getCause().getMessage().contains("ERR negative frequency"), rejected.getCause().getMessage());
+
+        // Words that would break the line protocol are refused before they are sent.
+        assertThrows(IllegalArgumentException.class, () -> sharded.insert("ap\tple", 1));
+
+        // The connection is still usable.
+        sharded.insert("apple", 4);
+        assertEquals(4, sharded.getFrequency("apple"));
+        assertEquals(List.of("apple"), sharded.getSuggestions("a", 5));
+    }
+
+    private static AutocompleteIndex dictionary() {
+        AutocompleteIndex index = new TernarySearchTree();
+        index.insert("apple", 5);
+        index.insert("apricot", 3);
+        index.insert("banana", 4);
+        return index;
+    }
+
+    /// Serves `server` on a free loopback port until the test ends, and connects to it.
+    private RemoteShard connect(ShardServer server, int readTimeoutMillis) throws IOException {
+        ServerSocket serverSocket = own(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve(serverSocket);
+            } catch (IOException e) {
+                // The test closed the socket.
+            }
+        }, "test-shard-server");
+        serving.setDaemon(true);
+        serving.start();
+        return own(new RemoteShard(serverSocket.getLocalPort(), readTimeoutMillis));
+    }
+
+    private <T extends AutoCloseable> T own(T resource) {
+        resources.add(0, resource); // Closed in reverse order of creation.
+        return resource;
+    }
+
+    private static List<String> words(List<WordFrequency> results) {
+        List<String> words = new ArrayList<>();
+        for (WordFrequency result : results) {
+            words.add(result.getWord());
+        }
+        return words;
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}